@@ -0,0 +1,43 @@
+package nl.jwienk.compiler.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler, so every result also has the allocation rate
+ * e.g. java -jar benchmarks/target/benchmarks.jar results-1.0.json PhaseBenchmark.parse
+ * The results are written as json so they can be compared between releases.
+ * Run it from the root of the repository, the corpus is read from programs/.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException {
+        String results = args.length > 0 ? args[0] : "benchmarks/results.json";
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results);
+
+        // e.g. -Dinput=1000 only runs the generated program with 1000 statements
+        String input = System.getProperty("input");
+        if (input != null) {
+            options.param("input", input.split(","));
+        }
+
+        // the other arguments select benchmarks, e.g. PhaseBenchmark.lex, by default all of them run
+        if (args.length > 1) {
+            for (int i = 1; i < args.length; i++) {
+                options.include(args[i]);
+            }
+        } else {
+            options.include(BenchmarkMain.class.getPackage().getName() + ".*");
+        }
+
+        new Runner(options.build()).run();
+    }
+}
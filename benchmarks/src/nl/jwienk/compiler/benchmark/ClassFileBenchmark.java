@@ -0,0 +1,58 @@
+package nl.jwienk.compiler.benchmark;
+
+import nl.jwienk.compiler.ClassFileWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * From the source to the class file, like --backend=class without writing the file
+ * The main method of a class can only have 64 KB of code, so only the smaller inputs fit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassFileBenchmark {
+
+    @Param({Programs.CORPUS, "1000"})
+    public String input;
+
+    private Map<String, String> programs;
+
+    @Setup
+    public void setup() throws IOException {
+        programs = Programs.load(input);
+        // the corpus also has programs that should not compile
+        programs.entrySet().removeIf(program -> {
+            try {
+                PhaseBenchmark.emit(program.getKey(), program.getValue());
+                return false;
+            } catch (RuntimeException e) {
+                return true;
+            }
+        });
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) {
+        for (Map.Entry<String, String> program : programs.entrySet()) {
+            blackhole.consume(new ClassFileWriter(program.getKey()).write(PhaseBenchmark.emit(program.getKey(), program.getValue())));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package nl.jwienk.compiler.benchmark;
+
+import nl.jwienk.compiler.CompilerLexer;
+import nl.jwienk.compiler.Emitter;
+import nl.jwienk.compiler.GeneratorVisitor;
+import nl.jwienk.compiler.IdentifierTokenFactory;
+import nl.jwienk.compiler.JasminWriter;
+import nl.jwienk.compiler.LoweringVisitor;
+import nl.jwienk.compiler.Optimizer;
+import nl.jwienk.compiler.PeepholeOptimizer;
+import nl.jwienk.compiler.ProgramParser;
+import nl.jwienk.compiler.TypeAnnotations;
+import nl.jwienk.compiler.TypeVisitor;
+import nl.jwienk.compiler.ir.Program;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every phase of the compiler on its own and all of them together
+ * A phase gets the output of the phases before it, those are prepared once in setup.
+ * A program that does not compile, e.g. not_nc, is left out of the corpus.
+ * An operation compiles every program of the input once, e.g. all of the corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class PhaseBenchmark {
+
+    @Param({Programs.CORPUS, "1000", "100000", "1000000"})
+    public String input;
+
+    private List<String> names = new ArrayList<>();
+    private List<String> sources = new ArrayList<>();
+    private List<List<? extends Token>> tokens = new ArrayList<>();
+    private List<ParseTree> trees = new ArrayList<>();
+    private List<TypeAnnotations> types = new ArrayList<>();
+    private List<Program> lowered = new ArrayList<>();
+    private List<Program> optimized = new ArrayList<>();
+
+    @Setup
+    public void setup() throws IOException {
+        for (Map.Entry<String, String> program : Programs.load(input).entrySet()) {
+            try {
+                List<? extends Token> programTokens = lex(program.getValue());
+                ParseTree tree = parse(programTokens);
+                TypeVisitor typeVisitor = new TypeVisitor();
+                typeVisitor.visit(tree);
+                Program ir = (Program) new LoweringVisitor(typeVisitor.getTypes()).visit(tree);
+
+                names.add(program.getKey());
+                sources.add(program.getValue());
+                tokens.add(programTokens);
+                trees.add(tree);
+                types.add(typeVisitor.getTypes());
+                lowered.add(ir);
+                optimized.add(new Optimizer().optimize(ir));
+            } catch (RuntimeException e) {
+                // the corpus also has programs that should not compile
+            }
+        }
+    }
+
+    @Benchmark
+    public void lex(Blackhole blackhole) {
+        for (String source : sources) {
+            blackhole.consume(lex(source));
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (List<? extends Token> programTokens : tokens) {
+            blackhole.consume(parse(programTokens));
+        }
+    }
+
+    @Benchmark
+    public void typeCheck(Blackhole blackhole) {
+        for (ParseTree tree : trees) {
+            TypeVisitor typeVisitor = new TypeVisitor();
+            typeVisitor.visit(tree);
+            blackhole.consume(typeVisitor.getTypes());
+        }
+    }
+
+    @Benchmark
+    public void lower(Blackhole blackhole) {
+        for (int i = 0; i < trees.size(); i++) {
+            blackhole.consume(new LoweringVisitor(types.get(i)).visit(trees.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void optimize(Blackhole blackhole) {
+        for (Program program : lowered) {
+            blackhole.consume(new Optimizer().optimize(program));
+        }
+    }
+
+    @Benchmark
+    public void generate(Blackhole blackhole) {
+        for (int i = 0; i < optimized.size(); i++) {
+            GeneratorVisitor visitor = new GeneratorVisitor(names.get(i));
+            visitor.visit(optimized.get(i));
+            blackhole.consume(visitor.getEmitter());
+        }
+    }
+
+    /**
+     * From the source to the jasmin code, the default backend, without writing files
+     */
+    @Benchmark
+    public void compile(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < sources.size(); i++) {
+            ByteArrayOutputStream jasmin = new ByteArrayOutputStream();
+            new JasminWriter(names.get(i)).write(emit(names.get(i), sources.get(i)), Channels.newChannel(jasmin));
+            blackhole.consume(jasmin.toByteArray());
+        }
+    }
+
+    /**
+     * Lex like ProgramParser, the identifiers get their numbers
+     */
+    private static List<? extends Token> lex(String source) {
+        CompilerLexer lexer = new CompilerLexer(CharStreams.fromString(source));
+        lexer.setTokenFactory(new IdentifierTokenFactory());
+        return lexer.getAllTokens();
+    }
+
+    private static ParseTree parse(List<? extends Token> programTokens) {
+        return ProgramParser.get().parse(new CommonTokenStream(new ListTokenSource(programTokens)), ConsoleErrorListener.INSTANCE);
+    }
+
+    /**
+     * All the phases of Compiler.build until the instructions are final
+     */
+    static Emitter emit(String name, String source) {
+        ParseTree tree = ProgramParser.get().parse(CharStreams.fromString(source), ConsoleErrorListener.INSTANCE);
+        TypeVisitor typeVisitor = new TypeVisitor();
+        typeVisitor.visit(tree);
+        Program ir = (Program) new LoweringVisitor(typeVisitor.getTypes()).visit(tree);
+        ir = new Optimizer().optimize(ir);
+
+        GeneratorVisitor visitor = new GeneratorVisitor(name);
+        visitor.visit(ir);
+        Emitter emitter = visitor.getEmitter();
+        new PeepholeOptimizer().optimize(emitter);
+        return emitter;
+    }
+}
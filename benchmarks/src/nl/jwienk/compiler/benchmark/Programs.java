@@ -0,0 +1,96 @@
+package nl.jwienk.compiler.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The programs the benchmarks compile
+ * Either all the programs in the programs directory or a generated program with a number of statements.
+ */
+public class Programs {
+
+    // the corpus, see load
+    public static final String CORPUS = "corpus";
+
+    private static final int VARIABLES = 16;
+
+    /**
+     * @param input "corpus" or the number of statements of a generated program
+     * @return the code of every program by its name
+     */
+    public static Map<String, String> load(String input) throws IOException {
+        Map<String, String> programs = new LinkedHashMap<>();
+        if (!input.equals(CORPUS)) {
+            programs.put("Generated" + input, generate(Integer.parseInt(input)));
+            return programs;
+        }
+
+        // run from the root of the repository or set -Dprograms=...
+        File directory = new File(System.getProperty("programs", "programs"));
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".program"));
+        if (files == null || files.length == 0) {
+            throw new IOException("No programs in " + directory.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            programs.put(name.substring(0, name.lastIndexOf('.')), new String(Files.readAllBytes(file.toPath())));
+        }
+        return programs;
+    }
+
+    /**
+     * A program that compiles and uses every kind of statement, with a fixed number of variables
+     * so the size of the program is only decided by the number of statements
+     *
+     * @param statements the number of statements at the top level
+     */
+    public static String generate(int statements) {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < VARIABLES; i++) {
+            code.append("var a").append(i).append(" = ").append(i + 1).append(";\n");
+            code.append("var d").append(i).append(" = ").append(i).append(".5;\n");
+        }
+        code.append("var b = true;\n");
+
+        for (int i = 0; i < statements; i++) {
+            int a = i % VARIABLES;
+            int other = (i * 7 + 3) % VARIABLES;
+            switch (i % 6) {
+                case 0:
+                    code.append("a").append(a).append(" = a").append(a).append(" * 3 + a").append(other)
+                            .append(" - (a").append(other).append(" / 2);\n");
+                    break;
+                case 1:
+                    code.append("d").append(a).append(" = d").append(other).append(" * 1.5 + a").append(a).append(";\n");
+                    break;
+                case 2:
+                    code.append("if (a").append(a).append(" < a").append(other).append(" && b) { a").append(a)
+                            .append(" = a").append(a).append(" + 1; } else { b = !b; }\n");
+                    break;
+                case 3:
+                    code.append("for (var i = 0; i < 4; i = i + 1) { a").append(a)
+                            .append(" = a").append(a).append(" + i * a").append(other).append("; }\n");
+                    break;
+                case 4:
+                    code.append("while (a").append(a).append(" > 1000) { a").append(a)
+                            .append(" = a").append(a).append(" / 2; }\n");
+                    break;
+                default:
+                    code.append("print(a").append(a).append(" + d").append(other).append(");\n");
+                    break;
+            }
+        }
+
+        // everything is printed, so nothing is dead code
+        for (int i = 0; i < VARIABLES; i++) {
+            code.append("print(a").append(i).append(");\nprint(d").append(i).append(");\n");
+        }
+        code.append("print(b);\n");
+        return code.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package nl.jwienk.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles a lot of programs at once, e.g. --batch programs/ or --batch one_c.program two_c.program
+ * A directory stands for all the .program files in it.
+ * Every program is built on a fork join pool with a thread per core, the programs run afterwards
+ * one after the other because a program that runs in memory takes over System.out.
+ * A program that does not compile is reported, the others still compile.
+ */
+public class BatchCompiler {
+
+    private static final String EXTENSION = ".program";
+
+    private Compiler compiler;
+    private int parallelism;
+
+    public BatchCompiler(Compiler compiler) {
+        this(compiler, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchCompiler(Compiler compiler, int parallelism) {
+        this.compiler = compiler;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compile the files of the options and print a report of all of them
+     */
+    public void compile(CompilerOptions options, PrintStream out) {
+        long start = System.nanoTime();
+        List<File> files = getFiles(options.getFiles());
+        List<CompileResult> results = compile(files, options);
+        long time = System.nanoTime() - start;
+
+        int failed = 0;
+        out.println("\n\t\t## BATCH START ##\n");
+        for (CompileResult result : results) {
+            if (result.getError() != null) {
+                failed++;
+                out.println(result.getName() + ": error " + result.getError());
+            } else {
+                long nanos = result.getMetrics().getTotalNanos();
+                out.println(result.getName() + ": ok " + String.format("%.3f", nanos / 1e6) + "ms");
+            }
+            for (String diagnostic : result.getDiagnostics()) {
+                out.println("\t" + diagnostic);
+            }
+            if (result.getError() != null) {
+                continue;
+            }
+            if (options.isStats()) {
+                out.print(result.getMetrics().format().replaceAll("(?m)^", "\t"));
+            }
+        }
+        out.println("\n\t\t## BATCH END ##\n");
+
+        for (CompileResult result : results) {
+            if (result.getAssemblerLog() != null) {
+                out.println(result.getName() + ": " + result.getAssemblerLog());
+            }
+            if (result.getRunLog() != null) {
+                out.println(result.getName() + ": " + result.getRunLog());
+            }
+        }
+
+        out.println(files.size() + " files, " + (files.size() - failed) + " compiled, " + failed + " failed in "
+                + String.format("%.3f", time / 1e6) + "ms");
+    }
+
+    /**
+     * Build all the files at the same time and then run them as the options say
+     *
+     * @return a result for every file in the same order, with an error if it did not compile
+     */
+    public List<CompileResult> compile(List<File> files, CompilerOptions options) {
+        List<Callable<CompileResult>> tasks = new ArrayList<>();
+        for (File file : files) {
+            tasks.add(() -> build(file, options));
+        }
+
+        List<CompileResult> results = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (Future<CompileResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompilerException("Batch was interrupted");
+        } catch (ExecutionException e) {
+            // build catches everything a single program can cause
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        for (CompileResult result : results) {
+            if (result.getError() != null) continue;
+            try {
+                compiler.run(result, options);
+            } catch (IOException e) {
+                result.setError(e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    private CompileResult build(File file, CompilerOptions options) {
+        String name = Compiler.getClassName(file);
+        List<String> diagnostics = new ArrayList<>();
+        try {
+            return compiler.build(MappedCharStream.open(file.toPath()), name, options, diagnostics);
+        } catch (IOException | RuntimeException e) {
+            // the syntax errors are kept, they are often the cause
+            CompileResult result = new CompileResult(name, diagnostics);
+            result.setError(e.getMessage() != null ? e.getMessage() : e.toString());
+            return result;
+        }
+    }
+
+    /**
+     * @return the files, with every directory replaced by the programs in it sorted by name
+     */
+    public static List<File> getFiles(List<String> paths) {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (!file.isDirectory()) {
+                files.add(file);
+                continue;
+            }
+            File[] programs = file.listFiles((dir, name) -> name.endsWith(EXTENSION));
+            if (programs != null) {
+                Arrays.sort(programs);
+                files.addAll(Arrays.asList(programs));
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,275 @@
+package nl.jwienk.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assembles the code of the generator directly into a class file
+ * so there is no need for a .j file and a jasmin process
+ */
+public class ClassFileWriter {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    // version 49 (java 5) does not require a StackMapTable
+    private static final int MAJOR_VERSION = 49;
+    private static final int MINOR_VERSION = 0;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int WIDE = 0xc4;
+
+    private String name;
+    private ConstantPool constantPool;
+
+    public ClassFileWriter(String name) {
+        this.name = name;
+        this.constantPool = new ConstantPool();
+    }
+
+    /**
+     * Create the class file for a program
+     *
+     * @param emitter the instructions of the main method as generated by the GeneratorVisitor
+     * @return the bytes of the class file
+     */
+    public byte[] write(Emitter emitter) {
+        try {
+            // the methods have to be assembled first because they fill the constant pool
+            byte[] init = writeInit();
+            byte[] main = writeMain(emitter);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            int thisClass = constantPool.addClass(name);
+            int superClass = constantPool.addClass("java/lang/Object");
+
+            out.writeInt(MAGIC);
+            out.writeShort(MINOR_VERSION);
+            out.writeShort(MAJOR_VERSION);
+            constantPool.write(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            // interfaces and fields
+            out.writeShort(0);
+            out.writeShort(0);
+            // methods
+            out.writeShort(2);
+            out.write(init);
+            out.write(main);
+            // attributes
+            out.writeShort(0);
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * standard initializer (calls java.lang.Object's initializer)
+     */
+    private byte[] writeInit() throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        code.write(0x2a); // aload_0
+        code.write(Opcode.INVOKESPECIAL.getCode());
+        writeShort(code, constantPool.addMethodRef("java/lang/Object", "<init>", "()V"));
+        code.write(Opcode.RETURN.getCode());
+
+        return writeMethod(ACC_PUBLIC, "<init>", "()V", 1, 1, code.toByteArray());
+    }
+
+    private byte[] writeMain(Emitter emitter) throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int[] labels = new int[emitter.getLabelCount()];
+        Arrays.fill(labels, -1);
+        List<int[]> fixups = new ArrayList<>();
+
+        for (int i = 0; i < emitter.size(); i++) {
+            if (emitter.isLabel(i)) {
+                labels[emitter.getOperand(i)] = code.size();
+                continue;
+            }
+
+            Opcode opcode = emitter.getOpcode(i);
+            int operand = emitter.getOperand(i);
+            int start = code.size();
+
+            switch (opcode.getOperand()) {
+                case NONE:
+                    code.write(opcode.getCode());
+                    break;
+                case BYTE:
+                    code.write(opcode.getCode());
+                    code.write(operand);
+                    break;
+                case SHORT:
+                    code.write(opcode.getCode());
+                    writeShort(code, operand);
+                    break;
+                case CONSTANT:
+                    writeConstant(code, opcode, emitter.getConstant(i));
+                    break;
+                case LOCAL:
+                    writeLocal(code, opcode, operand);
+                    break;
+                case INCREMENT:
+                    writeIncrement(code, operand, emitter.getExtra(i));
+                    break;
+                case BRANCH:
+                    code.write(opcode.getCode());
+                    // instruction start, offset position and label
+                    fixups.add(new int[]{start, code.size(), operand});
+                    writeShort(code, 0);
+                    break;
+                case FIELD:
+                    Emitter.Member field = (Emitter.Member) emitter.getConstant(i);
+                    code.write(opcode.getCode());
+                    writeShort(code, constantPool.addFieldRef(field.getOwner(), field.getName(), field.getDescriptor()));
+                    break;
+                case METHOD:
+                    Emitter.Member method = (Emitter.Member) emitter.getConstant(i);
+                    code.write(opcode.getCode());
+                    writeShort(code, constantPool.addMethodRef(method.getOwner(), method.getName(), method.getDescriptor()));
+                    break;
+            }
+        }
+
+        code.write(Opcode.RETURN.getCode());
+
+        // now that all labels are known the branch offsets can be filled in
+        byte[] bytes = code.toByteArray();
+        for (int[] fixup : fixups) {
+            String label = emitter.getLabelName(fixup[2]);
+            int target = labels[fixup[2]];
+            if (target < 0) {
+                throw new CompilerException("Undefined label: " + label);
+            }
+            int offset = target - fixup[0];
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new CompilerException("Branch to " + label + " is too far");
+            }
+            bytes[fixup[1]] = (byte) (offset >> 8);
+            bytes[fixup[1] + 1] = (byte) offset;
+        }
+
+        if (bytes.length > 0xFFFF) {
+            throw new CompilerException("Code of the main method is too large");
+        }
+
+        return writeMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V",
+                emitter.getMaxStack(), emitter.getMaxLocals(), bytes);
+    }
+
+    /**
+     * ldc, ldc_w and ldc2_w
+     */
+    private void writeConstant(ByteArrayOutputStream code, Opcode opcode, Object value) {
+        if (opcode == Opcode.LDC2_W) {
+            int index = constantPool.addDouble((Double) value);
+            code.write(opcode.getCode());
+            writeShort(code, index);
+            return;
+        }
+
+        int index;
+        if (value instanceof String) {
+            index = constantPool.addString((String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            index = constantPool.addFloat(((Number) value).floatValue());
+        } else {
+            index = constantPool.addInteger(((Number) value).intValue());
+        }
+
+        // ldc only has room for a single byte index
+        if (index > 0xFF) {
+            code.write(Opcode.LDC_W.getCode());
+            writeShort(code, index);
+        } else {
+            code.write(Opcode.LDC.getCode());
+            code.write(index);
+        }
+    }
+
+    private void writeLocal(ByteArrayOutputStream code, Opcode opcode, int index) {
+        if (index > 0xFF) {
+            code.write(WIDE);
+            code.write(opcode.getCode());
+            writeShort(code, index);
+        } else if (index <= 3) {
+            // e.g. iload_0, the short forms are numbered after the generic instruction
+            code.write(getShortFormBase(opcode) + index);
+        } else {
+            code.write(opcode.getCode());
+            code.write(index);
+        }
+    }
+
+    private void writeIncrement(ByteArrayOutputStream code, int index, int value) {
+        if (index > 0xFF || value < Byte.MIN_VALUE || value > Byte.MAX_VALUE) {
+            code.write(WIDE);
+            code.write(Opcode.IINC.getCode());
+            writeShort(code, index);
+            writeShort(code, value);
+        } else {
+            code.write(Opcode.IINC.getCode());
+            code.write(index);
+            code.write(value);
+        }
+    }
+
+    private static int getShortFormBase(Opcode opcode) {
+        switch (opcode) {
+            case ILOAD:
+                return 0x1a;
+            case DLOAD:
+                return 0x26;
+            case ALOAD:
+                return 0x2a;
+            case ISTORE:
+                return 0x3b;
+            case DSTORE:
+                return 0x47;
+            case ASTORE:
+                return 0x4b;
+            default:
+                throw new IllegalArgumentException(opcode.getMnemonic());
+        }
+    }
+
+    private byte[] writeMethod(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeShort(access);
+        out.writeShort(constantPool.addUtf8(name));
+        out.writeShort(constantPool.addUtf8(descriptor));
+        out.writeShort(1);
+
+        // the Code attribute
+        out.writeShort(constantPool.addUtf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        // exception table and attributes
+        out.writeShort(0);
+        out.writeShort(0);
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,190 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the jasmin code and the class file of every compiled program on disk
+ * An entry is found by the sha-256 of the source, the name, the compiler version and the options
+ * that change the generated code, so a changed program or compiler never finds an old entry.
+ * Every entry is a single file that is written to a temporary file first and then moved in place,
+ * so another compiler process sees either the whole entry or none of it.
+ * When the directory grows past its size the entries that were used the longest ago are removed,
+ * a hit updates the modification time of its entry.
+ */
+public class CompilationCache {
+
+    private static final String EXTENSION = ".entry";
+    private static final String LOCK = "lock";
+
+    // the threads of a batch share the lock file, a jvm can only hold a file lock once
+    private static final Object EVICTION = new Object();
+
+    private Path directory;
+    private long maxSize;
+
+    public CompilationCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The generated code of a program
+     */
+    public static class Entry {
+
+        private final byte[] jasmin;
+        private final byte[] classFile;
+
+        public Entry(byte[] jasmin, byte[] classFile) {
+            this.jasmin = jasmin;
+            this.classFile = classFile;
+        }
+
+        public byte[] getJasmin() {
+            return jasmin;
+        }
+
+        public byte[] getClassFile() {
+            return classFile;
+        }
+    }
+
+    /**
+     * @return the hex sha-256 of everything that decides the generated code
+     */
+    public static String key(CharStream input, String name, CompilerOptions options) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm has sha-256
+            throw new IllegalStateException(e);
+        }
+        String[] parts = {Compiler.VERSION, name, options.getBackend().name(), String.valueOf(options.isOptimize())};
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        // the same program gives the same key, mapped or not
+        if (input instanceof MappedCharStream) {
+            digest.update(((MappedCharStream) input).getBytes());
+        } else {
+            digest.update(input.getText(Interval.of(0, input.size() - 1)).getBytes(StandardCharsets.UTF_8));
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the entry, null if there is none or it can not be read
+     */
+    public Entry get(String key) {
+        Path path = directory.resolve(key + EXTENSION);
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            byte[] jasmin = new byte[in.readInt()];
+            in.readFully(jasmin);
+            byte[] classFile = new byte[in.readInt()];
+            in.readFully(classFile);
+
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(jasmin, classFile);
+        } catch (IOException e) {
+            // not compiled before or removed by another process in the meantime
+            return null;
+        }
+    }
+
+    /**
+     * Store an entry and remove the oldest entries if the cache got too large
+     */
+    public void put(String key, Entry entry) throws IOException {
+        Files.createDirectories(directory);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entry.getJasmin().length);
+        out.write(entry.getJasmin());
+        out.writeInt(entry.getClassFile().length);
+        out.write(entry.getClassFile());
+
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, directory.resolve(key + EXTENSION), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        evict();
+    }
+
+    /**
+     * Remove the least recently used entries until the cache fits, one process at a time
+     */
+    private void evict() throws IOException {
+        synchronized (EVICTION) {
+            try (FileChannel channel = FileChannel.open(directory.resolve(LOCK),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    List<Path> entries = new ArrayList<>();
+                    List<BasicFileAttributes> attributes = new ArrayList<>();
+                    long size = 0;
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+                        for (Path path : stream) {
+                            try {
+                                attributes.add(Files.readAttributes(path, BasicFileAttributes.class));
+                                entries.add(path);
+                                size += attributes.get(attributes.size() - 1).size();
+                            } catch (NoSuchFileException e) {
+                                // removed while listing
+                            }
+                        }
+                    }
+                    if (size <= maxSize) return;
+
+                    List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < entries.size(); i++) order.add(i);
+                    order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+
+                    for (int i : order) {
+                        if (size <= maxSize) break;
+                        Files.deleteIfExists(entries.get(i));
+                        size -= attributes.get(i).size();
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package nl.jwienk.compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The size of a compiled program for flight recorder, see CompileMetrics
+ */
+@Name("nl.jwienk.compiler.Compilation")
+@Label("Compilation")
+@Category("Compiler")
+@Description("The size of a compiled program")
+@StackTrace(false)
+public class CompilationEvent extends Event {
+
+    @Label("Program")
+    String program;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Parse Tree Nodes")
+    long parseTreeNodes;
+
+    @Label("Symbols")
+    long symbols;
+
+    @Label("Instructions")
+    long instructions;
+
+    @Label("Labels")
+    long labels;
+
+    @Label("Limit Locals")
+    long maxLocals;
+
+    @Label("Limit Stack")
+    long maxStack;
+}
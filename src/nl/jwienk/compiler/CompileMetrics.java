@@ -0,0 +1,184 @@
+package nl.jwienk.compiler;
+
+import jdk.jfr.FlightRecorder;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How long every phase of a compilation took, how much it allocated and how large the program is
+ * A phase runs from start, or the end of the phase before it, until end.
+ * The allocated bytes are those of the compiling thread, -1 if they are not measured, see measureAllocations.
+ * Every phase is also a PhaseEvent while flight recorder runs and everything adds up in CompilerStatistics.
+ * Both the management and the flight recorder classes take a while to load, too long for a single compile,
+ * so they are only used when they are needed.
+ */
+public class CompileMetrics {
+
+    public static final String TOKENS = "tokens";
+    public static final String PARSE_TREE_NODES = "parse tree nodes";
+    public static final String SYMBOLS = "symbols";
+    public static final String INSTRUCTIONS = "instructions";
+    public static final String LABELS = "labels";
+    public static final String MAX_LOCALS = "limit locals";
+    public static final String MAX_STACK = "limit stack";
+
+    private static volatile com.sun.management.ThreadMXBean threads;
+
+    private final String name;
+    private final Map<String, Long> nanos = new LinkedHashMap<>();
+    private final Map<String, Long> allocated = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+
+    private long startNanos;
+    private long startAllocated;
+    private PhaseEvent event;
+
+    public CompileMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Measure the allocations of every phase from now on, if the jvm can
+     */
+    public static synchronized void measureAllocations() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean bean = threads;
+        return bean == null ? -1 : bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Start the next phase
+     */
+    public void start() {
+        event = null;
+        if (FlightRecorder.isInitialized()) {
+            event = new PhaseEvent();
+            event.begin();
+        }
+        startAllocated = getAllocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * End the phase and start the next one
+     */
+    public void end(String phase) {
+        long time = System.nanoTime() - startNanos;
+        long bytes = startAllocated < 0 ? -1 : getAllocatedBytes() - startAllocated;
+        nanos.merge(phase, time, Long::sum);
+        allocated.merge(phase, bytes, Long::sum);
+
+        if (event != null) {
+            event.end();
+        }
+        if (event != null && event.shouldCommit()) {
+            event.program = name;
+            event.phase = phase;
+            event.allocated = bytes;
+            event.commit();
+        }
+        CompilerStatistics.getInstance().addPhase(phase, time, bytes);
+        start();
+    }
+
+    public void count(String counter, long value) {
+        counters.put(counter, value);
+        CompilerStatistics.getInstance().addCounter(counter, value);
+    }
+
+    /**
+     * Commit the counters of the program to flight recorder
+     */
+    public void commitCounters() {
+        if (!FlightRecorder.isInitialized()) return;
+        CompilationEvent compilation = new CompilationEvent();
+        if (compilation.shouldCommit()) {
+            compilation.program = name;
+            compilation.tokens = counters.getOrDefault(TOKENS, 0L);
+            compilation.parseTreeNodes = counters.getOrDefault(PARSE_TREE_NODES, 0L);
+            compilation.symbols = counters.getOrDefault(SYMBOLS, 0L);
+            compilation.instructions = counters.getOrDefault(INSTRUCTIONS, 0L);
+            compilation.labels = counters.getOrDefault(LABELS, 0L);
+            compilation.maxLocals = counters.getOrDefault(MAX_LOCALS, 0L);
+            compilation.maxStack = counters.getOrDefault(MAX_STACK, 0L);
+            compilation.commit();
+        }
+    }
+
+    /**
+     * @return the nanoseconds every phase took, in the order they ran
+     */
+    public Map<String, Long> getNanos() {
+        return Collections.unmodifiableMap(nanos);
+    }
+
+    /**
+     * @return the bytes every phase allocated, in the order they ran
+     */
+    public Map<String, Long> getAllocated() {
+        return Collections.unmodifiableMap(allocated);
+    }
+
+    /**
+     * @return the size of the program, see the constants
+     */
+    public Map<String, Long> getCounters() {
+        return Collections.unmodifiableMap(counters);
+    }
+
+    /**
+     * @return the total nanoseconds of all the phases
+     */
+    public long getTotalNanos() {
+        return nanos.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * e.g.
+     * parse: 1.234ms 512KB
+     * tokens: 120
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> phase : nanos.entrySet()) {
+            long bytes = allocated.get(phase.getKey());
+            text.append(phase.getKey()).append(": ").append(String.format("%.3f", phase.getValue() / 1e6)).append("ms ")
+                    .append(bytes < 0 ? "?" : String.valueOf(bytes / 1024)).append("KB\n");
+        }
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            text.append(counter.getKey()).append(": ").append(counter.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the number of nodes in the tree, its tokens included
+     */
+    public static long countNodes(ParseTree tree) {
+        long count = 0;
+        Deque<ParseTree> nodes = new ArrayDeque<>();
+        nodes.push(tree);
+        while (!nodes.isEmpty()) {
+            ParseTree node = nodes.pop();
+            count++;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                nodes.push(node.getChild(i));
+            }
+        }
+        return count;
+    }
+}
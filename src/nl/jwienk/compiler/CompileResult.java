@@ -0,0 +1,157 @@
+package nl.jwienk.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything a single compilation produced
+ * The instructions, the class file, the logs of jasmin and the program and how long every phase took.
+ */
+public class CompileResult {
+
+    private final String name;
+    private final List<String> diagnostics;
+    private final CompileMetrics metrics;
+
+    private Emitter emitter;
+    private Map<String, Integer> peepholeCounts;
+    private byte[] jasmin;
+    private byte[] classFile;
+    private String assemblerLog;
+    private String runLog;
+    private String error;
+
+    public CompileResult(String name) {
+        this(name, new ArrayList<>());
+    }
+
+    /**
+     * @param diagnostics where the syntax errors go, e.g. a list the caller keeps for when the compilation throws
+     */
+    public CompileResult(String name, List<String> diagnostics) {
+        this.name = name;
+        this.diagnostics = diagnostics;
+        this.metrics = new CompileMetrics(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the syntax errors, the compilation still continues after them
+     */
+    public List<String> getDiagnostics() {
+        return diagnostics;
+    }
+
+    public void addDiagnostic(String diagnostic) {
+        diagnostics.add(diagnostic);
+    }
+
+    /**
+     * @return the time and allocations of every phase and the size of the program
+     */
+    public CompileMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the instructions, null if the program came from the cache
+     */
+    public Emitter getEmitter() {
+        return emitter;
+    }
+
+    public void setEmitter(Emitter emitter) {
+        this.emitter = emitter;
+    }
+
+    /**
+     * @return the jasmin code, written from the instructions the first time it is needed
+     */
+    public byte[] getJasmin() throws IOException {
+        if (jasmin == null && emitter != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new JasminWriter(name).write(emitter, Channels.newChannel(out));
+            jasmin = out.toByteArray();
+        }
+        return jasmin;
+    }
+
+    public void setJasmin(byte[] jasmin) {
+        this.jasmin = jasmin;
+    }
+
+    /**
+     * Write the jasmin code without keeping all of it in memory, unless it was needed before
+     */
+    public void writeJasmin(WritableByteChannel channel) throws IOException {
+        if (jasmin != null) {
+            channel.write(ByteBuffer.wrap(jasmin));
+        } else if (emitter != null) {
+            new JasminWriter(name).write(emitter, channel);
+        }
+    }
+
+    /**
+     * @return the rewrites per peephole rule, null if the peephole optimizer did not run
+     */
+    public Map<String, Integer> getPeepholeCounts() {
+        return peepholeCounts;
+    }
+
+    public void setPeepholeCounts(Map<String, Integer> peepholeCounts) {
+        this.peepholeCounts = peepholeCounts;
+    }
+
+    /**
+     * @return the class file, null if it was only written to disk by jasmin
+     */
+    public byte[] getClassFile() {
+        return classFile;
+    }
+
+    public void setClassFile(byte[] classFile) {
+        this.classFile = classFile;
+    }
+
+    /**
+     * @return the execution log of jasmin, null for the class backend
+     */
+    public String getAssemblerLog() {
+        return assemblerLog;
+    }
+
+    public void setAssemblerLog(String assemblerLog) {
+        this.assemblerLog = assemblerLog;
+    }
+
+    /**
+     * @return the execution log of the program, null if it did not run
+     */
+    public String getRunLog() {
+        return runLog;
+    }
+
+    public void setRunLog(String runLog) {
+        this.runLog = runLog;
+    }
+
+    /**
+     * @return why the compilation failed, null if it succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,152 @@
+package nl.jwienk.compiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the compiler in a single jvm that compiles one request after the other
+ * so the parser, the visitors and the jit only warm up once.
+ * Every line on the input is a request, e.g.
+ * compile --no-optimize programs/one_c.program
+ * run --timeout=5000 programs/one_c.program
+ * quit
+ * compile only writes the class file, run also runs the program in this jvm,
+ * where it is stopped like a process when it crosses the timeout or the output limit.
+ * By default the class file is written directly, --backend=jasmin still uses jasmin.
+ * Every response line starts with what it is, the response ends with a line done:
+ * name, diagnostic, error, output (the jasmin code), assembler, run, timing and with --stats stats
+ */
+public class CompileServer {
+
+    // the default --max-output of a request
+    public static final long MAX_OUTPUT = 16L * 1024 * 1024;
+
+    private Compiler compiler;
+
+    public CompileServer(Compiler compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * Handle requests until the input ends or quit is received
+     * The output stream is kept, a program that runs prints to its own System.out
+     */
+    public void serve(InputStream input, PrintStream out) {
+        CompilerStatistics.register();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                if (line.equals("quit")) break;
+
+                try {
+                    handle(line.split("\\s+"), out);
+                } catch (RuntimeException e) {
+                    // e.g. a parse tree with holes the visitors do not expect, the next request is fine
+                    out.println("error " + e);
+                }
+                out.println("done");
+                out.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handle(String[] request, PrintStream out) {
+        String command = request[0];
+        if (!command.equals("compile") && !command.equals("run")) {
+            out.println("error Unknown request " + command);
+            return;
+        }
+
+        // the defaults go first so the options of the request override them
+        List<String> args = new ArrayList<>();
+        args.add("--backend=class");
+        args.add(command.equals("run") ? "--run=memory" : "--run=none");
+        // the output of a program in memory is kept in the heap of the server
+        args.add("--max-output=" + MAX_OUTPUT);
+        args.addAll(Arrays.asList(request).subList(1, request.length));
+
+        CompilerOptions options;
+        try {
+            options = CompilerOptions.parse(args.toArray(new String[0]));
+        } catch (IllegalArgumentException e) {
+            out.println("error " + e.getMessage());
+            return;
+        }
+        if (options.getFiles().size() != 1) {
+            out.println("error Expected a single file");
+            return;
+        }
+
+        File file = new File(options.getFiles().get(0));
+        if (!file.exists()) {
+            out.println("error File does not exist");
+            return;
+        }
+        String name = Compiler.getClassName(file);
+        out.println("name " + name);
+
+        CompileResult result;
+        List<String> diagnostics = new ArrayList<>();
+        try {
+            result = compiler.compile(MappedCharStream.open(file.toPath()), name, options, diagnostics);
+        } catch (IOException | CompilerException e) {
+            // the syntax errors first, they are often the cause
+            printDiagnostics(out, diagnostics);
+            out.println("error " + e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            printDiagnostics(out, diagnostics);
+            out.println("error " + e);
+            return;
+        }
+        printDiagnostics(out, diagnostics);
+
+        try {
+            printLines(out, "output", new String(result.getJasmin(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            out.println("error " + e.getMessage());
+        }
+
+        if (result.getAssemblerLog() != null) {
+            printLines(out, "assembler", result.getAssemblerLog());
+        }
+        if (result.getRunLog() != null) {
+            printLines(out, "run", result.getRunLog());
+        }
+
+        StringBuilder timings = new StringBuilder("timing");
+        for (Map.Entry<String, Long> timing : result.getMetrics().getNanos().entrySet()) {
+            timings.append(' ').append(timing.getKey()).append('=')
+                    .append(String.format("%.3f", timing.getValue() / 1e6)).append("ms");
+        }
+        out.println(timings);
+        if (options.isStats()) {
+            printLines(out, "stats", result.getMetrics().format().trim());
+        }
+    }
+
+    private static void printDiagnostics(PrintStream out, List<String> diagnostics) {
+        for (String diagnostic : diagnostics) {
+            out.println("diagnostic " + diagnostic);
+        }
+    }
+
+    private static void printLines(PrintStream out, String kind, String text) {
+        for (String line : text.split("\n", -1)) {
+            out.println(kind + " " + line);
+        }
+    }
+}
@@ -1,5 +1,10 @@
 grammar Compiler;
 
+options {
+  // every node gets a number while parsing, see ProgramParser
+  contextSuperClass = NumberedContext;
+}
+
 program
   : statement*
   ;
@@ -1,117 +1,395 @@
 package nl.jwienk.compiler;
 
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.runtime.PrintBuffer;
+import org.antlr.v4.runtime.BaseErrorListener;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.tree.ParseTree;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.List;
 
 public class Compiler {
 
+    // part of the key of the CompilationCache, change it when the generated code changes
+    public static final String VERSION = "1.0";
+
+    private static byte[] runtime;
 
     private String defaultCode = "var a = 5 ;  var b = 4 ; a = 34 + 34 + b / 4 ;\n" +
             "print(a);" +
             " print(34 + 2.5 - 8 / 4);" +
             "if (a == 5) { print(b); }";
 
-    private String startProg = ".class public {{name}}\n" +
-            ".super java/lang/Object\n" +
-            "\n" +
-            ";\n" +
-            "; standard initializer (calls java.lang.Object's initializer)\n" +
-            ";\n" +
-            ".method public <init>()V\n" +
-            "\taload_0\n" +
-            "\tinvokenonvirtual java/lang/Object/<init>()V\n" +
-            "\treturn\n" +
-            ".end method\n" +
-            "\n" +
-            ";\n" +
-            "; main() method\n" +
-            ";\n" +
-            ".method public static main([Ljava/lang/String;)V\n";
-
-
-    private String endProg = "\n\nreturn\n\n.end method";
-
     public void compile(String[] args) {
-        String compileString = "";
+        CompilerOptions options;
+        try {
+            options = CompilerOptions.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            return;
+        }
+
+        if (options.isStats()) {
+            CompilerStatistics.register();
+        }
+        if (options.isServer()) {
+            new CompileServer(this).serve(System.in, System.out);
+            return;
+        }
+        if (options.isBatch()) {
+            new BatchCompiler(this).compile(options, System.out);
+            return;
+        }
+
+        CharStream input;
         String name = "";
-        if (args.length == 0) {
-            compileString = defaultCode;
+        if (options.getFiles().isEmpty()) {
+            input = CharStreams.fromString(defaultCode);
             name = "DefaultCode";
         } else {
-            File f = new File(args[0]);
+            File f = new File(options.getFiles().get(0));
             if (!f.exists()) {
                 System.out.println("File does not exist");
                 return;
             }
             try {
-                compileString = new String(Files.readAllBytes(Paths.get(args[0])));
+                input = MappedCharStream.open(f.toPath());
             } catch (IOException ex) {
                 ex.printStackTrace();
                 return;
             }
-            name = f.getName();
-            if (name.lastIndexOf(".") > -1)
-                name = name.substring(0, name.lastIndexOf("."));
+            name = getClassName(f);
         }
 
-        // Create lexer and run scanner to create stream of tokens
-        CharStream charStream = CharStreams.fromString(compileString);
-        CompilerLexer lexer = new CompilerLexer(charStream);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        CompileResult result;
+        List<String> diagnostics = new ArrayList<>();
+        try {
+            result = compile(input, name, options, diagnostics);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        } finally {
+            // also when the program is not valid, a syntax error is often the cause
+            diagnostics.forEach(System.err::println);
+        }
 
-        // Create parser and feed it the tokens
-        CompilerParser parser = new CompilerParser(tokens);
-        ParseTree program = parser.program();
+        // a large program is not printed twice
+        if (!options.isQuiet()) {
+            System.out.println("\n\t\t## CODE START ##\n");
+            if (input instanceof MappedCharStream) {
+                try {
+                    Channels.newChannel(System.out).write(((MappedCharStream) input).getBytes());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                System.out.println();
+            } else {
+                System.out.println(input.getText(Interval.of(0, input.size() - 1)));
+            }
+            System.out.println("\n\t\t## CODE END ##\n");
 
-        // first generate all the types
-        TypeVisitor typeVisitor = new TypeVisitor();
-        typeVisitor.visit(program);
+            System.out.println("\n\t\t## OUTPUT START ##\n");
+            try {
+                result.writeJasmin(Channels.newChannel(System.out));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            System.out.println("\n\t\t## OUTPUT END ##\n");
+        }
 
-        // pass the types to the code generator
-        GeneratorVisitor visitor = new GeneratorVisitor(name, typeVisitor.getTypes());
-        ArrayList<String> prog = visitor.visit(program);
+        if (result.getPeepholeCounts() != null) {
+            System.out.println("\n\t\t## PEEPHOLE START ##\n");
+            result.getPeepholeCounts().forEach((rule, count) -> System.out.println(rule + ": " + count));
+            System.out.println("\n\t\t## PEEPHOLE END ##\n");
+        }
 
-        System.out.println("\n\t\t## CODE START ##\n");
-        System.out.println(compileString);
-        System.out.println("\n\t\t## CODE END ##\n");
+        if (result.getAssemblerLog() != null) {
+            System.out.println(result.getAssemblerLog());
+        }
+        if (result.getRunLog() != null) {
+            System.out.println(result.getRunLog());
+        }
+
+        if (options.isStats()) {
+            System.out.println("\n\t\t## STATS START ##\n");
+            System.out.print(result.getMetrics().format());
+            System.out.println("\n\t\t## STATS END ##\n");
+        }
+    }
 
-        String outputString = startProg.replaceAll("\\{\\{name\\}\\}", name) + prog.stream().collect(Collectors.joining("\n")) + endProg;
+    /**
+     * Compile a program, write its class file and run it as the options say
+     * Nothing is printed, everything ends up in the result.
+     *
+     * @param input the code of the program, e.g. a MappedCharStream
+     * @param name  the name of the class
+     * @return result
+     * @throws CompilerException if the program is not valid
+     */
+    public CompileResult compile(CharStream input, String name, CompilerOptions options) throws IOException {
+        return compile(input, name, options, new ArrayList<>());
+    }
 
-        System.out.println("\n\t\t## OUTPUT START ##\n");
-        System.out.println(outputString);
-        System.out.println("\n\t\t## OUTPUT END ##\n");
+    /**
+     * @param diagnostics gets the syntax errors, also when the program is not valid
+     * @throws CompilerException if the program is not valid
+     */
+    public CompileResult compile(CharStream input, String name, CompilerOptions options, List<String> diagnostics)
+            throws IOException {
+        CompileResult result = build(input, name, options, diagnostics);
+        run(result, options);
+        return result;
+    }
 
-        String fileName = name + ".j";
+    /**
+     * Compile a program and write its class file without running it
+     * Every call has its own visitors, so programs can be built on several threads at once.
+     *
+     * @return result
+     * @throws CompilerException if the program is not valid
+     */
+    public CompileResult build(CharStream input, String name, CompilerOptions options) throws IOException {
+        return build(input, name, options, new ArrayList<>());
+    }
 
-        // output the code to a jasmin file
-        try (PrintWriter out = new PrintWriter(name + ".j")) {
-            out.println(outputString);
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
+    /**
+     * @param diagnostics gets the syntax errors, also when the program is not valid
+     * @throws CompilerException if the program is not valid
+     */
+    public CompileResult build(CharStream input, String name, CompilerOptions options, List<String> diagnostics)
+            throws IOException {
+        CompileResult result = new CompileResult(name, diagnostics);
+        CompileMetrics metrics = result.getMetrics();
+        CompilerStatistics.getInstance().addCompilation();
+        metrics.start();
+
+        // an unchanged program is not compiled again
+        CompilationCache cache = null;
+        String key = null;
+        if (options.getCache() != null) {
+            cache = new CompilationCache(Paths.get(options.getCache()), options.getCacheSize());
+            key = CompilationCache.key(input, name, options);
+            CompilationCache.Entry entry = cache.get(key);
+            if (entry != null) {
+                result.setJasmin(entry.getJasmin());
+                result.setClassFile(entry.getClassFile());
+                if (options.getBackend() == CompilerOptions.Backend.JASMIN) {
+                    Files.write(Paths.get(name + ".j"), entry.getJasmin());
+                }
+                Files.write(Paths.get(name + ".class"), entry.getClassFile());
+                writeRuntime();
+                metrics.end("cache");
+                return result;
+            }
+        }
+
+        // lex and parse with the lexer and parser of this thread
+        ParseTree program = ProgramParser.get().parse(input, new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine,
+                                    String msg, RecognitionException e) {
+                result.addDiagnostic("line " + line + ":" + charPositionInLine + " " + msg);
+            }
+        });
+        metrics.end("parse");
+        metrics.count(CompileMetrics.TOKENS, ProgramParser.get().getTokenCount());
+        metrics.count(CompileMetrics.PARSE_TREE_NODES, CompileMetrics.countNodes(program));
+        metrics.start();
+
+        TypeAnnotations types = new TypeAnnotations(ProgramParser.get().getNodeCount());
+        // the tree of a program with syntax errors can have holes, only the TypeVisitor knows how it handles those
+        boolean fused = options.isFused() && result.getDiagnostics().isEmpty();
+        if (!fused) {
+            // first generate all the types
+            new TypeVisitor(types).visit(program);
+            metrics.end("types");
+        }
+
+        // lower the parse tree to the typed intermediate representation, when fused the types are checked here
+        LoweringVisitor loweringVisitor = new LoweringVisitor(types, fused);
+        Program ir = (Program) loweringVisitor.visit(program);
+        metrics.end("lower");
+        metrics.count(CompileMetrics.SYMBOLS, loweringVisitor.getSymbolCount());
+        metrics.start();
+
+        if (options.isOptimize()) {
+            ir = new Optimizer().optimize(ir);
+            metrics.end("optimize");
+        }
+
+        // generate the code from the intermediate representation
+        GeneratorVisitor visitor = new GeneratorVisitor(name);
+        visitor.visit(ir);
+        Emitter emitter = visitor.getEmitter();
+        result.setEmitter(emitter);
+        metrics.end("generate");
+
+        if (options.isOptimize()) {
+            PeepholeOptimizer peephole = new PeepholeOptimizer();
+            peephole.optimize(emitter);
+            result.setPeepholeCounts(peephole.getCounts());
+            metrics.end("peephole");
+        }
+
+        int labels = 0;
+        for (int i = 0; i < emitter.size(); i++) {
+            if (emitter.isLabel(i)) labels++;
+        }
+        metrics.count(CompileMetrics.INSTRUCTIONS, emitter.size() - labels);
+        metrics.count(CompileMetrics.LABELS, labels);
+        metrics.count(CompileMetrics.MAX_LOCALS, emitter.getMaxLocals());
+        metrics.count(CompileMetrics.MAX_STACK, emitter.getMaxStack());
+        metrics.commitCounters();
+        metrics.start();
+
+        if (options.getBackend() == CompilerOptions.Backend.CLASS) {
+            // assemble the class file ourselves
+            byte[] classFile = new ClassFileWriter(name).write(emitter);
+            result.setClassFile(classFile);
+            metrics.end("assemble");
+            Files.write(Paths.get(name + ".class"), classFile);
+            metrics.end("write");
+        } else {
+            String fileName = name + ".j";
+
+            // output the code to a jasmin file
+            try (FileChannel out = FileChannel.open(Paths.get(fileName),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                result.writeJasmin(out);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            metrics.end("write");
+
+            // execute jasmin which should create a .class file
+            Executor executor = createExecutor(options);
+            executor.executeJar("jasmin.jar", fileName);
+            result.setAssemblerLog(executor.getExecutionLog());
+
+            Path classPath = Paths.get(name + ".class");
+            if (cache != null && executor.getExitValue() == 0 && Files.exists(classPath)) {
+                result.setClassFile(Files.readAllBytes(classPath));
+            }
+            metrics.end("assemble");
         }
 
+        // a program with syntax errors is compiled again so the errors are reported again
+        if (cache != null && result.getClassFile() != null && result.getDiagnostics().isEmpty()) {
+            cache.put(key, new CompilationCache.Entry(result.getJasmin(), result.getClassFile()));
+            metrics.end("cache");
+        }
+
+        // the program prints through the runtime class, it has to be next to the program
+        writeRuntime();
+        metrics.end("runtime");
+        return result;
+    }
+
+    /**
+     * Run a program that was built before as the options say
+     * In memory the program prints to System.out of this jvm, so only one program can run at a time.
+     */
+    public void run(CompileResult result, CompilerOptions options) throws IOException {
+        String name = result.getName();
+        Executor executor = createExecutor(options);
+        result.getMetrics().start();
+
+        switch (options.getRun()) {
+            case MEMORY:
+                // load the generated class in this jvm
+                byte[] classFile = result.getClassFile();
+                if (classFile == null) classFile = Files.readAllBytes(Paths.get(name + ".class"));
+                executor.executeInMemory(name, classFile);
+                result.setRunLog(executor.getExecutionLog());
+                result.getMetrics().end("run");
+                break;
+            case PROCESS:
+                // execute the generated .class file
+                executor.execute(name);
+                result.setRunLog(executor.getExecutionLog());
+                result.getMetrics().end("run");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Executor createExecutor(CompilerOptions options) {
         Executor executor = new Executor();
+        executor.setTimeout(options.getTimeout());
+        executor.setCpuLimit(options.getCpuLimit());
+        executor.setMaxOutput(options.getMaxOutput());
+        return executor;
+    }
 
-        // execute jasmin which should create a .class file
-        executor.executeJar("jasmin.jar", fileName);
-        System.out.println(executor.getExecutionLog());
-        // execute the generated .class file
-        executor.execute(name);
-        System.out.println(executor.getExecutionLog());
+    /**
+     * @return the name of the file without its extension e.g. one_c for programs/one_c.program
+     */
+    public static String getClassName(File file) {
+        String name = file.getName();
+        if (name.lastIndexOf(".") > -1)
+            name = name.substring(0, name.lastIndexOf("."));
+        return name;
+    }
+
+    /**
+     * Copy the class file of the PrintBuffer to the directory the programs run from
+     * Synchronized because a batch builds programs at the same time.
+     */
+    private void writeRuntime() throws IOException {
+        Path path = Paths.get(GeneratorVisitor.PRINT_BUFFER + ".class");
+        byte[] bytes = getRuntime();
+        try {
+            if (Arrays.equals(Files.readAllBytes(path), bytes)) return;
+        } catch (NoSuchFileException e) {
+            // the first program in this directory
+        }
 
+        // other compilers and the programs they run may use the file at the same time, so it is never half written
+        Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(path.getParent(), "PrintBuffer", ".tmp");
+        try {
+            Files.write(temp, bytes);
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
     }
 
+    /**
+     * @return the class file of the runtime class, read once
+     */
+    private static synchronized byte[] getRuntime() throws IOException {
+        if (runtime == null) {
+            try (InputStream in = PrintBuffer.class.getResourceAsStream("PrintBuffer.class")) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int read; (read = in.read(buffer)) > 0; ) {
+                    bytes.write(buffer, 0, read);
+                }
+                runtime = bytes.toByteArray();
+            }
+        }
+        return runtime;
+    }
 
     public static void main(String[] args) {
         Compiler compiler = new Compiler();
@@ -4,6 +4,10 @@ import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 
 public class CompilerException extends RuntimeException {
+    public CompilerException(String s) {
+        super(s);
+    }
+
     public CompilerException(ParserRuleContext ctx, String s) {
         super(buildMessage(ctx, s));
     }
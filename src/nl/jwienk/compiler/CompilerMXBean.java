@@ -0,0 +1,33 @@
+package nl.jwienk.compiler;
+
+import java.util.Map;
+
+/**
+ * The statistics of all the compilations in this jvm, as nl.jwienk.compiler:type=Compiler
+ */
+public interface CompilerMXBean {
+
+    long getCompilations();
+
+    /**
+     * @return the total nanoseconds per phase
+     */
+    Map<String, Long> getPhaseNanos();
+
+    /**
+     * @return the total allocated bytes per phase
+     */
+    Map<String, Long> getPhaseAllocatedBytes();
+
+    /**
+     * @return the total of every counter, e.g. tokens
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return the counters of the last compiled program
+     */
+    Map<String, Long> getLastCounters();
+
+    void reset();
+}
@@ -0,0 +1,260 @@
+package nl.jwienk.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command line options of the compiler
+ * e.g. --backend=class --timeout=5000 --cache=.cache programs/one_c.program , --batch programs/ or --server
+ */
+public class CompilerOptions {
+
+    public enum Backend {
+        // write a .j file and assemble it with jasmin.jar
+        JASMIN,
+        // write the .class file directly
+        CLASS
+    }
+
+    public enum Run {
+        // start a new jvm for the program
+        PROCESS,
+        // load the program in the jvm of the compiler
+        MEMORY,
+        // only compile
+        NONE
+    }
+
+    private Backend backend = Backend.JASMIN;
+    private Run run = Run.PROCESS;
+    private long timeout = 60000;
+    private long cpuLimit = 0;
+    private long maxOutput = 0;
+    private boolean optimize = true;
+    private boolean fused = false;
+    private boolean server = false;
+    private boolean batch = false;
+    private boolean quiet = false;
+    private boolean stats = false;
+    private String cache = null;
+    private long cacheSize = 64L * 1024 * 1024;
+    private List<String> files = new ArrayList<>();
+
+    public static CompilerOptions parse(String[] args) {
+        CompilerOptions options = new CompilerOptions();
+
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                options.files.add(arg);
+                continue;
+            }
+
+            int equals = arg.indexOf('=');
+            String option = equals < 0 ? arg.substring(2) : arg.substring(2, equals);
+            String value = equals < 0 ? null : arg.substring(equals + 1);
+
+            switch (option) {
+                case "backend":
+                    options.backend = Backend.valueOf(requireValue(option, value).toUpperCase());
+                    break;
+                case "run":
+                    options.run = Run.valueOf(requireValue(option, value).toUpperCase());
+                    break;
+                case "no-optimize":
+                    options.optimize = false;
+                    break;
+                case "fused":
+                    options.fused = true;
+                    break;
+                case "timeout":
+                    options.timeout = parseLong(option, value);
+                    break;
+                case "cpu-limit":
+                    options.cpuLimit = parseLong(option, value);
+                    break;
+                case "max-output":
+                    options.maxOutput = parseLong(option, value);
+                    break;
+                case "server":
+                    options.server = true;
+                    break;
+                case "batch":
+                    options.batch = true;
+                    break;
+                case "quiet":
+                    options.quiet = true;
+                    break;
+                case "stats":
+                    options.stats = true;
+                    break;
+                case "cache":
+                    options.cache = requireValue(option, value);
+                    break;
+                case "cache-size":
+                    options.cacheSize = parseLong(option, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option --" + option);
+            }
+        }
+
+        return options;
+    }
+
+    private static String requireValue(String option, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Option --" + option + " requires a value");
+        }
+        return value;
+    }
+
+    private static long parseLong(String option, String value) {
+        try {
+            return Long.parseLong(requireValue(option, value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + option + " requires a number");
+        }
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public void setBackend(Backend backend) {
+        this.backend = backend;
+    }
+
+    public Run getRun() {
+        return run;
+    }
+
+    public void setRun(Run run) {
+        this.run = run;
+    }
+
+    /**
+     * @return true if the optimization passes run over the intermediate representation
+     */
+    public boolean isOptimize() {
+        return optimize;
+    }
+
+    public void setOptimize(boolean optimize) {
+        this.optimize = optimize;
+    }
+
+    /**
+     * @return true if the types are checked while lowering instead of in a TypeVisitor pass before it,
+     * the output and the errors are the same
+     */
+    public boolean isFused() {
+        return fused;
+    }
+
+    public void setFused(boolean fused) {
+        this.fused = fused;
+    }
+
+    /**
+     * @return wall clock limit for running a program in milliseconds, 0 for no limit
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * @return cpu time limit for running a program in milliseconds, 0 for no limit
+     */
+    public long getCpuLimit() {
+        return cpuLimit;
+    }
+
+    public void setCpuLimit(long cpuLimit) {
+        this.cpuLimit = cpuLimit;
+    }
+
+    /**
+     * @return output limit for running a program in bytes, 0 for no limit
+     */
+    public long getMaxOutput() {
+        return maxOutput;
+    }
+
+    public void setMaxOutput(long maxOutput) {
+        this.maxOutput = maxOutput;
+    }
+
+    /**
+     * @return true if requests are read from stdin instead of compiling the files, see CompileServer
+     */
+    public boolean isServer() {
+        return server;
+    }
+
+    public void setServer(boolean server) {
+        this.server = server;
+    }
+
+    /**
+     * @return true if all the files and the programs in the directories are compiled at once, see BatchCompiler
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * @return true if the code and the jasmin code are not printed, only the logs
+     */
+    public boolean isQuiet() {
+        return quiet;
+    }
+
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * @return true if the time, allocations and size of the program are printed, see CompileMetrics
+     */
+    public boolean isStats() {
+        return stats;
+    }
+
+    public void setStats(boolean stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * @return the directory of the CompilationCache, null if programs are always compiled
+     */
+    public String getCache() {
+        return cache;
+    }
+
+    public void setCache(String cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @return the size in bytes the cache directory is kept under
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public List<String> getFiles() {
+        return files;
+    }
+}
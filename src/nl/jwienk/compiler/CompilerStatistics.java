@@ -0,0 +1,107 @@
+package nl.jwienk.compiler;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the CompileMetrics of every compilation in this jvm
+ * The threads of a batch add at the same time, so nothing is locked.
+ * It is only visible over jmx after register, which the server and --stats do.
+ */
+public class CompilerStatistics implements CompilerMXBean {
+
+    public static final String OBJECT_NAME = "nl.jwienk.compiler:type=Compiler";
+
+    private static final CompilerStatistics INSTANCE = new CompilerStatistics();
+
+    private final LongAdder compilations = new LongAdder();
+    private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> phaseAllocated = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastCounters = new ConcurrentHashMap<>();
+
+    private volatile boolean registered = false;
+
+    public static CompilerStatistics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the statistics with the platform mbean server, only the first call does
+     * From then on the allocations of every phase are measured too.
+     */
+    public static synchronized void register() {
+        if (INSTANCE.registered) return;
+        CompileMetrics.measureAllocations();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered by another class loader
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+        INSTANCE.registered = true;
+    }
+
+    public void addCompilation() {
+        compilations.increment();
+    }
+
+    public void addPhase(String phase, long nanos, long allocated) {
+        phaseNanos.computeIfAbsent(phase, key -> new LongAdder()).add(nanos);
+        if (allocated >= 0) {
+            phaseAllocated.computeIfAbsent(phase, key -> new LongAdder()).add(allocated);
+        }
+    }
+
+    public void addCounter(String counter, long value) {
+        counters.computeIfAbsent(counter, key -> new LongAdder()).add(value);
+        lastCounters.put(counter, value);
+    }
+
+    @Override
+    public long getCompilations() {
+        return compilations.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        return sum(phaseNanos);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseAllocatedBytes() {
+        return sum(phaseAllocated);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        return sum(counters);
+    }
+
+    @Override
+    public Map<String, Long> getLastCounters() {
+        return new TreeMap<>(lastCounters);
+    }
+
+    @Override
+    public void reset() {
+        compilations.reset();
+        phaseNanos.clear();
+        phaseAllocated.clear();
+        counters.clear();
+        lastCounters.clear();
+    }
+
+    private static Map<String, Long> sum(Map<String, LongAdder> adders) {
+        Map<String, Long> sums = new TreeMap<>();
+        adders.forEach((key, adder) -> sums.put(key, adder.sum()));
+        return sums;
+    }
+}
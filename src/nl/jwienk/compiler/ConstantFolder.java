@@ -0,0 +1,202 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Binary;
+import nl.jwienk.compiler.ir.Constant;
+import nl.jwienk.compiler.ir.Convert;
+import nl.jwienk.compiler.ir.Expression;
+import nl.jwienk.compiler.ir.IrRewriter;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.ir.Unary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Evaluates expressions with constant operands at compile time
+ * e.g. 3.14 * (10 + 1) becomes 34.54
+ * A variable that is only assigned once, by its declaration, with a constant value
+ * is replaced by that value wherever it is loaded.
+ * The results follow the java semantics of int and double exactly.
+ */
+public class ConstantFolder extends IrRewriter {
+
+    private UsageCounter usages;
+    private Map<Symbol, Constant> constants = new HashMap<>();
+
+    public Program fold(Program program) {
+        this.usages = UsageCounter.count(program);
+        return (Program) rewrite(program);
+    }
+
+    /**
+     * The tree is rewritten in the order the code runs, so a declaration is seen before its loads
+     */
+    @Override
+    public Node visitAssign(Assign assign) {
+        Node node = super.visitAssign(assign);
+        Expression value = ((Assign) node).getValue();
+
+        if (assign.isDeclaration() && usages.getStores(assign.getSymbol()) == 1 && value instanceof Constant) {
+            constants.put(assign.getSymbol(), (Constant) value);
+        }
+
+        return node;
+    }
+
+    @Override
+    public Node visitLoad(Load load) {
+        Constant constant = constants.get(load.getSymbol());
+        return constant != null ? constant : load;
+    }
+
+    @Override
+    public Node visitConvert(Convert convert) {
+        Node node = super.visitConvert(convert);
+        Expression value = ((Convert) node).getValue();
+
+        if (value instanceof Constant) {
+            return new Constant(Type.DOUBLE, (double) (Integer) ((Constant) value).getValue());
+        }
+        return node;
+    }
+
+    @Override
+    public Node visitUnary(Unary unary) {
+        Node node = super.visitUnary(unary);
+        Expression value = ((Unary) node).getValue();
+
+        if (!(value instanceof Constant)) {
+            return node;
+        }
+
+        Object constant = ((Constant) value).getValue();
+        switch (unary.getOperator()) {
+            case NOT:
+                return new Constant(Type.BOOLEAN, !(Boolean) constant);
+            case NEG:
+                if (constant instanceof Integer) return new Constant(Type.INT, -(Integer) constant);
+                return new Constant(Type.DOUBLE, -(Double) constant);
+            default:
+                return node;
+        }
+    }
+
+    @Override
+    public Node visitBinary(Binary binary) {
+        Node node = super.visitBinary(binary);
+        Binary folded = (Binary) node;
+
+        if (!(folded.getLeft() instanceof Constant) || !(folded.getRight() instanceof Constant)) {
+            return node;
+        }
+
+        Object left = ((Constant) folded.getLeft()).getValue();
+        Object right = ((Constant) folded.getRight()).getValue();
+        Constant result;
+
+        switch (folded.getOperandType()) {
+            case INT:
+                result = foldInt(folded, (Integer) left, (Integer) right);
+                break;
+            case DOUBLE:
+                result = foldDouble(folded, (Double) left, (Double) right);
+                break;
+            default:
+                result = foldBoolean(folded, (Boolean) left, (Boolean) right);
+                break;
+        }
+
+        return result != null ? result : node;
+    }
+
+    private static Constant foldInt(Binary binary, int left, int right) {
+        switch (binary.getOperator()) {
+            case ADD:
+                return new Constant(Type.INT, left + right);
+            case SUB:
+                return new Constant(Type.INT, left - right);
+            case MUL:
+                return new Constant(Type.INT, left * right);
+            case DIV:
+                // dividing by zero has to throw when the program runs
+                return right == 0 ? null : new Constant(Type.INT, left / right);
+            case SHL:
+                return new Constant(Type.INT, left << right);
+            case SHR:
+                return new Constant(Type.INT, left >> right);
+            case USHR:
+                return new Constant(Type.INT, left >>> right);
+            default:
+                return compare(binary, Integer.compare(left, right));
+        }
+    }
+
+    private static Constant foldDouble(Binary binary, double left, double right) {
+        double value;
+        switch (binary.getOperator()) {
+            case ADD:
+                value = left + right;
+                break;
+            case SUB:
+                value = left - right;
+                break;
+            case MUL:
+                value = left * right;
+                break;
+            case DIV:
+                value = left / right;
+                break;
+            default:
+                // operands are never NaN, see below
+                return compare(binary, left < right ? -1 : left > right ? 1 : 0);
+        }
+
+        // infinity and NaN can not be written as a literal in the output
+        return Double.isInfinite(value) || Double.isNaN(value) ? null : new Constant(Type.DOUBLE, value);
+    }
+
+    private static Constant foldBoolean(Binary binary, boolean left, boolean right) {
+        switch (binary.getOperator()) {
+            case AND:
+                return new Constant(Type.BOOLEAN, left && right);
+            case OR:
+                return new Constant(Type.BOOLEAN, left || right);
+            default:
+                // booleans are compared as 0 and 1
+                return compare(binary, Integer.compare(left ? 1 : 0, right ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param comparison below 0, 0 or above 0 like compareTo
+     */
+    private static Constant compare(Binary binary, int comparison) {
+        boolean value;
+        switch (binary.getOperator()) {
+            case LT:
+                value = comparison < 0;
+                break;
+            case LE:
+                value = comparison <= 0;
+                break;
+            case GT:
+                value = comparison > 0;
+                break;
+            case GE:
+                value = comparison >= 0;
+                break;
+            case EQ:
+                value = comparison == 0;
+                break;
+            case NE:
+                value = comparison != 0;
+                break;
+            default:
+                return null;
+        }
+        return new Constant(Type.BOOLEAN, value);
+    }
+}
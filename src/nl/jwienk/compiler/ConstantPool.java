@@ -0,0 +1,143 @@
+package nl.jwienk.compiler;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The constant pool of a class file
+ * Equal constants are only added once
+ */
+public class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    private Map<String, Integer> indices;
+    private List<Object[]> entries;
+    // index 0 is never used
+    private int size = 1;
+
+    public ConstantPool() {
+        this.indices = new HashMap<>();
+        this.entries = new ArrayList<>();
+    }
+
+    public int addUtf8(String value) {
+        return add(UTF8, value);
+    }
+
+    public int addInteger(int value) {
+        return add(INTEGER, value);
+    }
+
+    public int addFloat(float value) {
+        return add(FLOAT, value);
+    }
+
+    public int addDouble(double value) {
+        return add(DOUBLE, value);
+    }
+
+    public int addString(String value) {
+        return add(STRING, addUtf8(value));
+    }
+
+    /**
+     * @param name internal name e.g. java/lang/Object
+     * @return index
+     */
+    public int addClass(String name) {
+        return add(CLASS, addUtf8(name));
+    }
+
+    public int addFieldRef(String owner, String name, String descriptor) {
+        return add(FIELD_REF, addClass(owner), addNameAndType(name, descriptor));
+    }
+
+    public int addMethodRef(String owner, String name, String descriptor) {
+        return add(METHOD_REF, addClass(owner), addNameAndType(name, descriptor));
+    }
+
+    private int addNameAndType(String name, String descriptor) {
+        return add(NAME_AND_TYPE, addUtf8(name), addUtf8(descriptor));
+    }
+
+    /**
+     * @return the value of the constant_pool_count item in the class file
+     */
+    public int getCount() {
+        return size;
+    }
+
+    private int add(int tag, Object... values) {
+        StringBuilder key = new StringBuilder().append(tag);
+        for (Object value : values) {
+            // doubles are keyed by their bits so -0.0 and NaN stay distinct
+            if (value instanceof Double) value = Double.doubleToRawLongBits((Double) value);
+            if (value instanceof Float) value = Float.floatToRawIntBits((Float) value);
+            key.append(':').append(value);
+        }
+
+        Integer index = indices.get(key.toString());
+        if (index != null) {
+            return index;
+        }
+
+        index = size;
+        Object[] entry = new Object[values.length + 1];
+        entry[0] = tag;
+        System.arraycopy(values, 0, entry, 1, values.length);
+        entries.add(entry);
+        indices.put(key.toString(), index);
+
+        // a double takes up 2 entries
+        size += tag == DOUBLE ? 2 : 1;
+
+        if (size > 0xFFFF) {
+            throw new CompilerException("Too many constants");
+        }
+
+        return index;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeShort(size);
+        for (Object[] entry : entries) {
+            int tag = (Integer) entry[0];
+            out.writeByte(tag);
+            switch (tag) {
+                case UTF8:
+                    out.writeUTF((String) entry[1]);
+                    break;
+                case INTEGER:
+                    out.writeInt((Integer) entry[1]);
+                    break;
+                case FLOAT:
+                    out.writeFloat((Float) entry[1]);
+                    break;
+                case DOUBLE:
+                    out.writeDouble((Double) entry[1]);
+                    break;
+                case CLASS:
+                case STRING:
+                    out.writeShort((Integer) entry[1]);
+                    break;
+                default:
+                    out.writeShort((Integer) entry[1]);
+                    out.writeShort((Integer) entry[2]);
+                    break;
+            }
+        }
+    }
+}
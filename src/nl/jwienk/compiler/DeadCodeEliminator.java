@@ -0,0 +1,198 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Binary;
+import nl.jwienk.compiler.ir.Block;
+import nl.jwienk.compiler.ir.Constant;
+import nl.jwienk.compiler.ir.Convert;
+import nl.jwienk.compiler.ir.Expression;
+import nl.jwienk.compiler.ir.For;
+import nl.jwienk.compiler.ir.If;
+import nl.jwienk.compiler.ir.IrRewriter;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Operator;
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.ir.Unary;
+import nl.jwienk.compiler.ir.While;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes code that can never run or whose result is never used
+ * An if, while or for with a constant condition keeps only the code that runs.
+ * A store whose value is never loaded is removed, see {@link LivenessAnalyzer}.
+ * A variable without stores left is removed from its scope. Prints are always kept.
+ * Removing code can make other stores dead, so the pass repeats until nothing changes.
+ */
+public class DeadCodeEliminator extends IrRewriter {
+
+    private Set<Assign> deadStores;
+    private Set<Symbol> dead;
+
+    public Program eliminate(Program program) {
+        while (true) {
+            this.deadStores = LivenessAnalyzer.findDeadStores(program);
+            this.dead = findDeadVariables(program, deadStores);
+            Program rewritten = (Program) rewrite(program);
+            if (rewritten == program) {
+                return program;
+            }
+            program = rewritten;
+        }
+    }
+
+    /**
+     * @return the variables whose stores are all dead
+     */
+    private static Set<Symbol> findDeadVariables(Program program, Set<Assign> deadStores) {
+        Set<Symbol> dead = new HashSet<>();
+        Set<Symbol> kept = new HashSet<>();
+
+        new IrRewriter() {
+            @Override
+            public Node visitAssign(Assign assign) {
+                if (deadStores.contains(assign)) {
+                    dead.add(assign.getSymbol());
+                } else {
+                    kept.add(assign.getSymbol());
+                }
+                return assign;
+            }
+        }.rewrite(program);
+
+        dead.removeAll(kept);
+        return dead;
+    }
+
+    /**
+     * @return true if evaluating the expression can throw, only an int division by zero does
+     */
+    public static boolean canThrow(Expression expression) {
+        if (expression instanceof Binary) {
+            Binary binary = (Binary) expression;
+            if (binary.getOperator() == Operator.DIV && binary.getOperandType() == Type.INT
+                    && !isNonZeroConstant(binary.getRight())) {
+                return true;
+            }
+            return canThrow(binary.getLeft()) || canThrow(binary.getRight());
+        }
+        if (expression instanceof Unary) {
+            return canThrow(((Unary) expression).getValue());
+        }
+        if (expression instanceof Convert) {
+            return canThrow(((Convert) expression).getValue());
+        }
+        return false;
+    }
+
+    private static boolean isNonZeroConstant(Expression expression) {
+        return expression instanceof Constant && !((Constant) expression).getValue().equals(0);
+    }
+
+    @Override
+    public Node visitProgram(Program program) {
+        List<Node> statements = rewriteStatements(program.getStatements());
+        List<Symbol> symbols = liveSymbols(program.getSymbols());
+
+        if (statements == program.getStatements() && symbols == program.getSymbols()) {
+            return program;
+        }
+        return new Program(statements, symbols);
+    }
+
+    /**
+     * A block that loses all its statements is removed
+     * one that was already empty is kept, an if or loop would only replace it by a new empty block
+     */
+    @Override
+    public Node visitBlock(Block block) {
+        List<Node> statements = rewriteStatements(block.getStatements());
+        List<Symbol> symbols = liveSymbols(block.getSymbols());
+
+        if (statements == block.getStatements() && symbols == block.getSymbols()) {
+            return block;
+        }
+        if (statements.isEmpty() && symbols.isEmpty()) {
+            return null;
+        }
+        return new Block(statements, symbols);
+    }
+
+    @Override
+    public Node visitAssign(Assign assign) {
+        return deadStores.contains(assign) ? null : super.visitAssign(assign);
+    }
+
+    @Override
+    public Node visitIf(If ifStatement) {
+        if (ifStatement.getCondition() instanceof Constant) {
+            boolean value = (Boolean) ((Constant) ifStatement.getCondition()).getValue();
+            return rewrite(value ? ifStatement.getThen() : ifStatement.getOtherwise());
+        }
+
+        If rewritten = (If) super.visitIf(ifStatement);
+        boolean emptyThen = isEmpty(rewritten.getThen());
+        boolean emptyOtherwise = rewritten.getOtherwise() == null || isEmpty(rewritten.getOtherwise());
+
+        if (emptyThen && emptyOtherwise && !canThrow(rewritten.getCondition())) {
+            return null;
+        }
+        if (emptyOtherwise && rewritten.getOtherwise() != null) {
+            return new If(rewritten.getCondition(), rewritten.getThen(), null);
+        }
+        return rewritten;
+    }
+
+    /**
+     * A loop that never runs is removed, a loop without a body is kept because it might never end
+     */
+    @Override
+    public Node visitWhile(While whileStatement) {
+        if (isFalse(whileStatement.getCondition())) {
+            return null;
+        }
+        return super.visitWhile(whileStatement);
+    }
+
+    @Override
+    public Node visitFor(For forStatement) {
+        if (isFalse(forStatement.getCondition())) {
+            // only the initializer runs, its variable is still scoped to the loop
+            Node initializer = rewrite(forStatement.getInitializer());
+            if (initializer == null) {
+                return null;
+            }
+            return new Block(new ArrayList<>(Collections.singletonList(initializer)), liveSymbols(forStatement.getSymbols()));
+        }
+
+        For rewritten = (For) super.visitFor(forStatement);
+        List<Symbol> symbols = liveSymbols(rewritten.getSymbols());
+        if (symbols == rewritten.getSymbols()) {
+            return rewritten;
+        }
+        return new For(rewritten.getInitializer(), rewritten.getCondition(), rewritten.getUpdate(), rewritten.getBody(), symbols);
+    }
+
+    /**
+     * @return the symbols without the dead ones, the same list if none are dead
+     */
+    private List<Symbol> liveSymbols(List<Symbol> symbols) {
+        List<Symbol> live = new ArrayList<>(symbols.size());
+        for (Symbol symbol : symbols) {
+            if (!dead.contains(symbol)) live.add(symbol);
+        }
+        return live.size() == symbols.size() ? symbols : live;
+    }
+
+    private static boolean isEmpty(Node node) {
+        return node instanceof Block && !(node instanceof Program) && ((Block) node).getStatements().isEmpty();
+    }
+
+    private static boolean isFalse(Expression condition) {
+        return condition instanceof Constant && !(Boolean) ((Constant) condition).getValue();
+    }
+}
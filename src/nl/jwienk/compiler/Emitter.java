@@ -0,0 +1,253 @@
+package nl.jwienk.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the instructions of the main method in a compact form
+ * Every instruction is an opcode and an int operand, labels are numbered.
+ * Constants, fields and methods are stored once and referenced by index.
+ * The JasminWriter and the ClassFileWriter stream the result to their output.
+ */
+public class Emitter {
+
+    // marks the position of a label instead of an instruction
+    public static final byte LABEL = -1;
+    // marks an instruction that was removed but not compacted yet
+    public static final byte REMOVED = -2;
+
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private byte[] opcodes = new byte[256];
+    private int[] operands = new int[256];
+    private int[] extras = new int[256];
+    private int size = 0;
+
+    private List<Object> constants = new ArrayList<>();
+    private Map<Object, Integer> constantIndices = new HashMap<>();
+    private List<String> labels = new ArrayList<>();
+
+    private int maxLocals = 1;
+    private int maxStack = 0;
+
+    public void emit(Opcode opcode) {
+        add(opcode.ordinal(), 0, 0);
+    }
+
+    /**
+     * @param opcode  e.g. iload or bipush
+     * @param operand the local or the value
+     */
+    public void emit(Opcode opcode, int operand) {
+        add(opcode.ordinal(), operand, 0);
+    }
+
+    /**
+     * e.g. iinc 1 1
+     */
+    public void emitIncrement(int local, int value) {
+        add(Opcode.IINC.ordinal(), local, value);
+    }
+
+    /**
+     * ldc or ldc2_w
+     *
+     * @param value an Integer, Double or String
+     */
+    public void emitConstant(Opcode opcode, Object value) {
+        add(opcode.ordinal(), addConstant(value), 0);
+    }
+
+    /**
+     * @param opcode a branch instruction e.g. goto
+     * @param label  the label created by newLabel
+     */
+    public void emitJump(Opcode opcode, int label) {
+        add(opcode.ordinal(), label, 0);
+    }
+
+    /**
+     * e.g. invokevirtual java/io/PrintStream/println(I)V
+     */
+    public void emitMethod(Opcode opcode, String owner, String name, String descriptor) {
+        add(opcode.ordinal(), addConstant(new Member(owner, name, descriptor)), 0);
+    }
+
+    /**
+     * Create a label that can be jumped to, it still has to be placed
+     *
+     * @param name name of the label in the jasmin output
+     * @return label
+     */
+    public int newLabel(String name) {
+        labels.add(name);
+        return labels.size() - 1;
+    }
+
+    /**
+     * Place a label before the next instruction
+     */
+    public void placeLabel(int label) {
+        add(LABEL, label, 0);
+    }
+
+    private void add(int opcode, int operand, int extra) {
+        if (size == opcodes.length) {
+            int capacity = size * 2;
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            operands = Arrays.copyOf(operands, capacity);
+            extras = Arrays.copyOf(extras, capacity);
+        }
+        opcodes[size] = (byte) opcode;
+        operands[size] = operand;
+        extras[size] = extra;
+        size++;
+    }
+
+    private int addConstant(Object value) {
+        Integer index = constantIndices.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndices.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Overwrite an instruction, used by the PeepholeOptimizer
+     */
+    public void replace(int index, Opcode opcode, int operand, int extra) {
+        opcodes[index] = (byte) opcode.ordinal();
+        operands[index] = operand;
+        extras[index] = extra;
+    }
+
+    /**
+     * Remove an instruction or label, the gap stays until compact is called
+     */
+    public void remove(int index) {
+        opcodes[index] = REMOVED;
+    }
+
+    public boolean isRemoved(int index) {
+        return opcodes[index] == REMOVED;
+    }
+
+    /**
+     * Close the gaps left by remove
+     */
+    public void compact() {
+        int to = 0;
+        for (int from = 0; from < size; from++) {
+            if (opcodes[from] == REMOVED) continue;
+            opcodes[to] = opcodes[from];
+            operands[to] = operands[from];
+            extras[to] = extras[from];
+            to++;
+        }
+        size = to;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isLabel(int index) {
+        return opcodes[index] == LABEL;
+    }
+
+    /**
+     * @return the opcode of an instruction, null for a label or a removed instruction
+     */
+    public Opcode getOpcode(int index) {
+        return opcodes[index] < 0 ? null : OPCODES[opcodes[index]];
+    }
+
+    /**
+     * @return the local, value, label or constant index of an instruction
+     */
+    public int getOperand(int index) {
+        return operands[index];
+    }
+
+    /**
+     * @return the increment of an iinc instruction
+     */
+    public int getExtra(int index) {
+        return extras[index];
+    }
+
+    /**
+     * @return the Integer, Double, String or Member an instruction refers to
+     */
+    public Object getConstant(int index) {
+        return constants.get(operands[index]);
+    }
+
+    public int getLabelCount() {
+        return labels.size();
+    }
+
+    public String getLabelName(int label) {
+        return labels.get(label);
+    }
+
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * The limits are only known after the whole body has been generated
+     */
+    public void setLimits(int maxLocals, int maxStack) {
+        this.maxLocals = maxLocals;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * A field or method of a class
+     */
+    public static class Member {
+        private final String owner;
+        private final String name;
+        private final String descriptor;
+
+        public Member(String owner, String name, String descriptor) {
+            this.owner = owner;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescriptor() {
+            return descriptor;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Member)) return false;
+            Member member = (Member) o;
+            return owner.equals(member.owner) && name.equals(member.name) && descriptor.equals(member.descriptor);
+        }
+
+        @Override
+        public int hashCode() {
+            return (owner.hashCode() * 31 + name.hashCode()) * 31 + descriptor.hashCode();
+        }
+    }
+}
@@ -1,17 +1,73 @@
 package nl.jwienk.compiler;
 
+import nl.jwienk.compiler.runtime.PrintBuffer;
+
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Executor {
 
-    private BufferedReader error;
-    private BufferedReader op;
+    // System.out is shared by the whole jvm so only one program can capture it at a time
+    private static final Object OUT_LOCK = new Object();
+
+    // how often the watchdog checks the limits of a running process
+    private static final long POLL_MILLIS = 50;
+    // how long a program in memory gets to end after it was stopped
+    private static final long STOP_MILLIS = 1000;
+
+    private StringBuilder error = new StringBuilder();
+    private StringBuilder op = new StringBuilder();
     private int exitVal;
 
+    private long timeoutMillis;
+    private long cpuLimitMillis;
+    private long maxOutputBytes;
+    private OutputListener listener;
+
+    private volatile long outputBytes;
+    private volatile String killReason;
+
+    /**
+     * @param timeoutMillis wall clock time after which the process is killed, 0 for no limit
+     */
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param cpuLimitMillis cpu time after which the process is killed, 0 for no limit
+     */
+    public void setCpuLimit(long cpuLimitMillis) {
+        this.cpuLimitMillis = cpuLimitMillis;
+    }
+
+    /**
+     * @param maxOutputBytes amount of stdout and stderr after which the process is killed, 0 for no limit
+     */
+    public void setMaxOutput(long maxOutputBytes) {
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    /**
+     * @param listener receives every line as soon as the process prints it
+     */
+    public void setListener(OutputListener listener) {
+        this.listener = listener;
+    }
+
     public void executeJar(String jarPath, String fileName) {
         final List<String> args = new ArrayList<>();
         args.add(0, "java");
@@ -28,14 +84,154 @@ public class Executor {
         run(args);
     }
 
+    /**
+     * Run a program inside this jvm instead of starting a new one
+     * The class is defined by a throwaway class loader and everything it prints is captured.
+     * main runs on its own thread that is stopped when it crosses one of the limits, like a process is killed.
+     *
+     * @param name  name of the class
+     * @param bytes the class file
+     */
+    public void executeInMemory(String name, byte[] bytes) {
+        reset();
+        CaptureStream output = new CaptureStream();
+
+        try {
+            Class<?> program = new ProgramClassLoader().define(name, bytes);
+            MethodHandle main = MethodHandles.publicLookup()
+                    .findStatic(program, "main", MethodType.methodType(void.class, String[].class));
+
+            Throwable[] thrown = new Throwable[1];
+            Thread thread = new Thread(() -> {
+                try {
+                    main.invokeExact(new String[0]);
+                } catch (Throwable e) {
+                    thrown[0] = e;
+                } finally {
+                    // also prints the rest of the buffer of a program that threw
+                    try {
+                        PrintBuffer.flush();
+                    } catch (OutputClosedException e) {
+                        // the program was stopped, the rest of its output is dropped
+                    }
+                }
+            }, "executor-" + name);
+            thread.setDaemon(true);
+
+            synchronized (OUT_LOCK) {
+                PrintStream out = System.out;
+                PrintStream capture = new PrintStream(output, false);
+                System.setOut(capture);
+                try {
+                    thread.start();
+                    watch(thread, output);
+                } finally {
+                    capture.flush();
+                    System.setOut(out);
+                }
+            }
+
+            if (this.killReason != null) {
+                this.exitVal = 1;
+                this.error.append("\nkilled: ").append(this.killReason);
+            } else if (thrown[0] != null) {
+                // behave like a jvm that died because of an uncaught exception
+                this.exitVal = 1;
+                this.error.append("\n").append(thrown[0]);
+            } else {
+                this.exitVal = 0;
+            }
+        } catch (ReflectiveOperationException | InterruptedException e) {
+            this.exitVal = 1;
+            this.error.append("\n").append(e);
+        }
+
+        String text = output.toString();
+        for (int start = 0, end; start < text.length(); start = end + 1) {
+            end = text.indexOf('\n', start);
+            if (end < 0) end = text.length();
+            if (end == start) continue;
+            this.op.append("\n").append(text, start, end);
+            if (this.listener != null) this.listener.stdout(text.substring(start, end));
+        }
+    }
+
+    /**
+     * Wait for the program to end, stop it when it crosses one of the limits
+     * The output limit is checked by the CaptureStream itself, as the program prints.
+     */
+    private void watch(Thread thread, CaptureStream output) throws InterruptedException {
+        long start = System.nanoTime();
+        ThreadMXBean threads = this.cpuLimitMillis > 0 ? ManagementFactory.getThreadMXBean() : null;
+
+        while (thread.isAlive()) {
+            thread.join(POLL_MILLIS);
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            String reason = null;
+            if (!thread.isAlive()) {
+                break;
+            } else if (this.killReason != null) {
+                reason = this.killReason;
+            } else if (this.timeoutMillis > 0 && elapsed >= this.timeoutMillis) {
+                reason = "timed out after " + this.timeoutMillis + " ms";
+            } else if (threads != null
+                    && TimeUnit.NANOSECONDS.toMillis(threads.getThreadCpuTime(thread.getId())) >= this.cpuLimitMillis) {
+                reason = "cpu limit of " + this.cpuLimitMillis + " ms exceeded";
+            }
+
+            if (reason != null) {
+                stop(thread, output, reason);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stop the thread of a program
+     * Its output is closed first, so a program that prints dies at its next write as well.
+     * On a jvm that can not stop threads a program that does not print is abandoned.
+     */
+    private void stop(Thread thread, CaptureStream output, String reason) throws InterruptedException {
+        if (this.killReason == null) {
+            this.killReason = reason;
+        }
+        output.close();
+        thread.interrupt();
+        stop(thread);
+        thread.join(STOP_MILLIS);
+        if (thread.isAlive()) {
+            this.error.append("\nthe program could not be stopped");
+        }
+    }
+
+    @SuppressWarnings({"deprecation", "removal"})
+    private static void stop(Thread thread) {
+        try {
+            thread.stop();
+        } catch (UnsupportedOperationException e) {
+            // newer jvms can not stop a thread
+        }
+    }
+
     private void run(List<String> args) {
+        reset();
         try {
-            final Runtime re = Runtime.getRuntime();
-            final Process command = re.exec(args.toArray(new String[0]));
-            this.error = new BufferedReader(new InputStreamReader(command.getErrorStream()));
-            this.op = new BufferedReader(new InputStreamReader(command.getInputStream()));
-            command.waitFor();
+            final Process command = new ProcessBuilder(args).start();
+
+            // both streams have to be read while the process runs, otherwise it blocks on a full pipe
+            Thread errorPump = pump(command.getErrorStream(), this.error, true);
+            Thread outputPump = pump(command.getInputStream(), this.op, false);
+
+            watch(command);
+
+            errorPump.join();
+            outputPump.join();
+
             this.exitVal = command.exitValue();
+            if (this.killReason != null) {
+                this.error.append("\nkilled: ").append(this.killReason);
+            }
             if (this.exitVal != 0) {
                 throw new IOException("Failed to execute, " + this.getExecutionLog());
             }
@@ -45,31 +241,131 @@ public class Executor {
         }
     }
 
-    public String getExecutionLog() {
-        StringBuilder error = new StringBuilder();
-        String line;
-        try {
-            while ((line = this.error.readLine()) != null) {
-                error.append("\n").append(line);
+    /**
+     * Wait for the process to end, kill it when it crosses one of the limits
+     */
+    private void watch(Process command) throws InterruptedException {
+        long start = System.nanoTime();
+
+        while (!command.waitFor(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            if (this.timeoutMillis > 0 && elapsed >= this.timeoutMillis) {
+                kill(command, "timed out after " + this.timeoutMillis + " ms");
+            } else if (this.maxOutputBytes > 0 && this.outputBytes > this.maxOutputBytes) {
+                kill(command, "output limit of " + this.maxOutputBytes + " bytes exceeded");
+            } else if (this.cpuLimitMillis > 0) {
+                long cpu = command.info().totalCpuDuration().orElse(Duration.ZERO).toMillis();
+                if (cpu >= this.cpuLimitMillis) {
+                    kill(command, "cpu limit of " + this.cpuLimitMillis + " ms exceeded");
+                }
             }
-        } catch (final Exception e) {
-            e.printStackTrace();
         }
-        StringBuilder output = new StringBuilder();
-        try {
-            while ((line = this.op.readLine()) != null) {
-                output.append("\n").append(line);
+    }
+
+    private void kill(Process command, String reason) {
+        if (this.killReason == null) {
+            this.killReason = reason;
+        }
+        command.destroyForcibly();
+    }
+
+    /**
+     * Read a stream on its own thread until the process closes it
+     */
+    private Thread pump(InputStream stream, StringBuilder log, boolean isError) {
+        Thread thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // the line separator counts as well
+                    long total = addOutput(line.length() + 1);
+
+                    if (this.maxOutputBytes > 0 && total > this.maxOutputBytes) {
+                        // keep reading so the process is not blocked until it is killed
+                        continue;
+                    }
+
+                    synchronized (log) {
+                        log.append("\n").append(line);
+                    }
+
+                    if (this.listener != null) {
+                        if (isError) {
+                            this.listener.stderr(line);
+                        } else {
+                            this.listener.stdout(line);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // the stream is closed when the process gets killed
             }
-        } catch (final Exception e) {
-            e.printStackTrace();
+        }, isError ? "executor-stderr" : "executor-stdout");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Collects what a program in memory prints, up to the output limit
+     * Once it is closed every write throws, which ends the program that writes.
+     */
+    private class CaptureStream extends ByteArrayOutputStream {
+
+        private boolean closed = false;
+
+        @Override
+        public synchronized void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
         }
-        try {
-            this.error.close();
-            this.op.close();
-        } catch (final Exception e) {
-            e.printStackTrace();
+
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            if (closed) {
+                throw new OutputClosedException();
+            }
+            long total = addOutput(length);
+            if (maxOutputBytes > 0 && total > maxOutputBytes) {
+                if (killReason == null) {
+                    killReason = "output limit of " + maxOutputBytes + " bytes exceeded";
+                }
+                closed = true;
+                throw new OutputClosedException();
+            }
+            super.write(bytes, offset, length);
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
         }
-        return "exit: " + this.exitVal + ", error: " + error + ", result:\n" + output;
     }
 
-}
\ No newline at end of file
+    private static class OutputClosedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private synchronized long addOutput(long bytes) {
+        this.outputBytes += bytes;
+        return this.outputBytes;
+    }
+
+    private void reset() {
+        this.error = new StringBuilder();
+        this.op = new StringBuilder();
+        this.exitVal = 0;
+        this.outputBytes = 0;
+        this.killReason = null;
+    }
+
+    public int getExitValue() {
+        return exitVal;
+    }
+
+    public String getExecutionLog() {
+        return "exit: " + this.exitVal + ", error: " + this.error + ", result:\n" + this.op;
+    }
+
+}
@@ -1,596 +1,430 @@
 package nl.jwienk.compiler;
 
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
-
-import java.util.ArrayList;
-
-
-public class GeneratorVisitor extends CompilerBaseVisitor<ArrayList<String>> {
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Binary;
+import nl.jwienk.compiler.ir.Block;
+import nl.jwienk.compiler.ir.Constant;
+import nl.jwienk.compiler.ir.Convert;
+import nl.jwienk.compiler.ir.Expression;
+import nl.jwienk.compiler.ir.For;
+import nl.jwienk.compiler.ir.If;
+import nl.jwienk.compiler.ir.IrVisitor;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Operator;
+import nl.jwienk.compiler.ir.Print;
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.ir.Unary;
+import nl.jwienk.compiler.ir.While;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Generates the instructions of the main method from the intermediate representation
+ * Every node is visited exactly once and appends its instructions to the emitter
+ */
+public class GeneratorVisitor implements IrVisitor<Void> {
+
+    // the runtime class that buffers the output of print
+    public static final String PRINT_BUFFER = "nl/jwienk/compiler/runtime/PrintBuffer";
 
     private String name;
-    private SymbolTable symbolTable;
-    private ParseTreeProperty<Type> types;
-    private int storeIndex = 1; // start at 1 because 0 is the first main argument
+    private Emitter emitter;
+    private SlotAllocator slots;
+    // the variables that have a local
+    private Set<Symbol> declared = new HashSet<>();
     private int labelCount = 0;
-    private int locals = 1; // we already have 1 for the main argument
-    private int stack = 0;
-    private int finalStack = 0;
 
-    public GeneratorVisitor(String name, ParseTreeProperty<Type> types) {
+    public GeneratorVisitor(String name) {
         this.name = name;
-        this.types = types;
-        this.symbolTable = new SymbolTable();
+        this.emitter = new Emitter();
+        // slot 0 is the main argument
+        this.slots = new SlotAllocator(1);
     }
 
-    public void increaseStack(int size) {
-        this.stack += size;
+    public Emitter getEmitter() {
+        return emitter;
     }
 
-    /**
-     * only replace the stackValue if it is higher then the last stackValue
-     */
-    public void resetStack() {
-        if (this.stack > this.finalStack) {
-            this.finalStack = this.stack;
-        }
-        this.stack = 0;
+    public Void visit(Node node) {
+        return node.accept(this);
     }
 
     @Override
-    public ArrayList<String> visitProgram(CompilerParser.ProgramContext ctx) {
+    public Void visitProgram(Program program) {
         //System.out.println("# VISITING Program");
 
-        // Open a scope for the root
-        this.symbolTable.openScope();
-
-        ArrayList<String> code = new ArrayList<>();
-
-        // if we do visitChildren(ctx) the order gets messed up
-        for (CompilerParser.StatementContext statement : ctx.statement()) {
-            code.addAll(visit(statement));
+        for (Node statement : program.getStatements()) {
+            visit(statement);
         }
+        releaseSlots(program.getSymbols());
+        this.emitter.emitMethod(Opcode.INVOKESTATIC, PRINT_BUFFER, "flush", "()V");
 
-        this.symbolTable.closeScope();
+        // the limits end up in front of the code when it is written
+        this.emitter.setLimits(this.slots.getMaxLocals(), StackAnalyzer.getMaxStack(this.emitter));
 
 
-        code.add(0, ".limit stack " + this.finalStack);
-        code.add(0, ".limit locals " + this.locals);
-
-
-        return code;
+        return null;
     }
 
     /**
      * The block statement has its own scope
      * e.g { someCode }
      *
-     * @param ctx BlockStatementContext
-     * @return code
+     * @param block Block
+     * @return null
      */
     @Override
-    public ArrayList<String> visitBlockStatement(CompilerParser.BlockStatementContext ctx) {
+    public Void visitBlock(Block block) {
         //System.out.println("# VISITING BlockStatement");
 
-        this.symbolTable.openScope();
-
-        ArrayList<String> code = new ArrayList<>();
-
-        // dont try to visit if there is no code inside
-        if (ctx.statementList() != null) {
-
-            for (CompilerParser.StatementContext statement : ctx.statementList().statement()) {
-                code.addAll(visit(statement));
-            }
+        for (Node statement : block.getStatements()) {
+            visit(statement);
         }
+        releaseSlots(block.getSymbols());
 
-        this.symbolTable.closeScope();
-
-        return code;
+        return null;
     }
 
     /**
-     * e.g var a [assignmentStatement]
-     *
-     * @param ctx VariableStatementContext
-     * @return code
+     * The variables of a closed scope are dead, their slots can be used again
      */
-    @Override
-    public ArrayList<String> visitVariableStatement(CompilerParser.VariableStatementContext ctx) {
-        //System.out.println("# VISITING VariableStatement");
-
-        ArrayList<String> code = new ArrayList<>();
-        Type type = types.get(ctx);
-
-        int storeAddress = this.storeIndex;
-
-        String identifier = ctx.assignmentStatement().IDENTIFIER().getText();
-
-        // a double takes up 2 spaces
-        if (type == Type.DOUBLE) {
-            this.storeIndex += 2;
-            this.locals += 2;
-        } else {
-            this.storeIndex++;
-            this.locals++;
+    private void releaseSlots(List<Symbol> symbols) {
+        for (Symbol symbol : symbols) {
+            this.slots.release(symbol.getAddress(), symbol.getType());
         }
-
-        // a variable is being assigned so we have to save the type of this value for when it gets referenced
-        Symbol symbol = new Symbol(ctx, identifier, type);
-        this.symbolTable.enter(identifier, symbol);
-        symbol.setAddress(storeAddress);
-
-        // visit the assignment that represents te value
-        code.addAll(visit(ctx.assignmentStatement()));
-
-        this.resetStack();
-        return code;
     }
 
     /**
-     * e.g. a = 1 + 1;
+     * e.g. var a = 1 + 1; or a = 1 + 1;
+     * a declaration gets the lowest free local, when the optimizer removed a declaration
+     * because its value is never read the first store that is left gets it
      *
-     * @param ctx AssignmentStatementContext
-     * @return code
+     * @param assign Assign
+     * @return null
      */
     @Override
-    public ArrayList<String> visitAssignmentStatement(CompilerParser.AssignmentStatementContext ctx) {
+    public Void visitAssign(Assign assign) {
         //System.out.println("# VISITING AssignmentStatement");
-        ArrayList<String> code = new ArrayList<>();
-
-        Symbol symbol = this.symbolTable.retrieve(ctx.IDENTIFIER().getText());
-
-        Type expressionType = types.get(ctx.expression());
-        Type symbolType = symbol.getType();
-
-        // the type can change when reassigned
-        if (symbolType != expressionType) {
-
-            symbol.setType(expressionType);
-            symbol.setAddress(this.storeIndex);
-
-            if (expressionType == Type.DOUBLE) {
-                this.storeIndex++;
-                this.storeIndex++;
-                this.locals++;
-                this.locals++;
-            } else {
-                this.storeIndex++;
-                this.locals++;
-            }
+        Symbol symbol = assign.getSymbol();
 
+        if (this.declared.add(symbol)) {
+            symbol.setAddress(this.slots.allocate(symbol.getType()));
         }
 
-        String mnemonic = Helper.getTypeMnemonic(symbol.getType());
-
-        code.addAll(visit(ctx.expression()));
-        code.add(mnemonic + "store " + symbol.getAddress());
+        visit(assign.getValue());
+        this.emitter.emit(Helper.getStoreOpcode(symbol.getType()), symbol.getAddress());
 
-        return code;
+        return null;
     }
 
     /**
      * e.g print(2 + 2);
+     * the value is printed by the PrintBuffer runtime, which is flushed at the end of the program
      *
-     * @param ctx PrintStatementContext
-     * @return code
+     * @param print Print
+     * @return null
      */
     @Override
-    public ArrayList<String> visitPrintStatement(CompilerParser.PrintStatementContext ctx) {
+    public Void visitPrint(Print print) {
         //System.out.println("# VISITING PrintStatement");
-        ArrayList<String> code = new ArrayList<>();
+        visit(print.getValue());
+        Type expressionType = print.getValue().getType();
+        this.emitter.emitMethod(Opcode.INVOKESTATIC, PRINT_BUFFER, "println", "(" + Helper.getTypeDescriptor(expressionType) + ")V");
 
-        code.add("getstatic java/lang/System/out Ljava/io/PrintStream;");
-        code.addAll(visit(ctx.expression()));
-        Type expressionType = types.get(ctx.expression());
-        code.add("invokevirtual java/io/PrintStream/println(" + Helper.getTypeDescriptor(expressionType) + ")V");
-
-        this.increaseStack(1);
-        this.resetStack();
-        return code;
+        return null;
     }
 
     /**
-     * e.g (1 + 1)
-     * It has the highest precedence of all expressions
+     * e.g. (double) 1
      *
-     * @param ctx ParenthesesExpressionContext
-     * @return code
+     * @param convert Convert
+     * @return null
      */
     @Override
-    public ArrayList<String> visitParenthesesExpression(CompilerParser.ParenthesesExpressionContext ctx) {
-        //System.out.println("# VISITING ParenthesesExpression");
-        ArrayList<String> code = new ArrayList<>();
-        code.addAll(visit(ctx.expression()));
-        return code;
+    public Void visitConvert(Convert convert) {
+        visit(convert.getValue());
+        // only an int is ever widened to a double
+        this.emitter.emit(Opcode.I2D);
+
+        return null;
     }
 
     /**
-     * e.g. -1
+     * e.g. -1 or !true
      *
-     * @param ctx NegateExpressionContext
-     * @return code
+     * @param unary Unary
+     * @return null
      */
     @Override
-    public ArrayList<String> visitNegateExpression(CompilerParser.NegateExpressionContext ctx) {
-        //System.out.println("# VISITING NegateExpression");
-        ArrayList<String> code = new ArrayList<>();
-        Type type = types.get(ctx);
-
-        code.addAll(visit(ctx.expression()));
-        code.add(Helper.getTypeMnemonic(type) + "neg");
+    public Void visitUnary(Unary unary) {
+        visit(unary.getValue());
+
+        if (unary.getOperator() == Operator.NOT) {
+            // flip the result of this code
+            // there has to be some easier bitwise flip solution
+            this.emitter.emit(Opcode.ICONST_1);
+            this.emitter.emit(Opcode.IADD);
+            this.emitter.emit(Opcode.ICONST_2);
+            this.emitter.emit(Opcode.IREM);
+        } else {
+            this.emitter.emit(Helper.getArithmeticOpcode(Operator.NEG, unary.getType()));
+        }
 
-        return code;
+        return null;
     }
 
     /**
-     * e.g 1 + 1
+     * e.g 1 + 1, 1 == 1 or 1 == 1 && 2 == 2
+     * the operands already have the same type
      *
-     * @param ctx AddSubExpressionContext
-     * @return code
+     * @param binary Binary
+     * @return null
      */
     @Override
-    public ArrayList<String> visitAddSubExpression(CompilerParser.AddSubExpressionContext ctx) {
-        //System.out.println("# VISITING AddSubExpression");
-        ArrayList<String> code = new ArrayList<>();
-
-        code.addAll(visit(ctx.left));
-        // the type might have changed
-        visit(ctx.right);
-
-
-        Type leftType = types.get(ctx.left);
-        Type rightType = types.get(ctx.right);
-
-        Type returnType = Type.getReturnType(leftType, rightType);
-        this.types.put(ctx, returnType);
-
-        String mnemonic = Helper.getTypeMnemonic(returnType);
-
-        // some casting might be needed if the types are not the same
-        if (leftType != returnType) {
-            code.add(Helper.getTypeMnemonic(leftType) + "2" + mnemonic);
-            if (returnType == Type.DOUBLE) this.increaseStack(1);
-        }
-
-        code.addAll(visit(ctx.right));
-
-        if (rightType != returnType) {
-            code.add(Helper.getTypeMnemonic(rightType) + "2" + mnemonic);
-            if (returnType == Type.DOUBLE) this.increaseStack(1);
+    public Void visitBinary(Binary binary) {
+        if (binary.getOperator().isComparison() || binary.getOperator().isLogical()) {
+            return visitCondition(binary);
         }
 
-        code.add(mnemonic + Helper.getOperatorAsWord(ctx.op.getText()));
+        visit(binary.getLeft());
+        visit(binary.getRight());
+        this.emitter.emit(Helper.getArithmeticOpcode(binary.getOperator(), binary.getType()));
 
-        this.resetStack();
-        return code;
+        return null;
     }
 
     /**
-     * e.g. 1 * 2
+     * A comparison or logical expression whose value is needed
+     * e.g. var a = 1 == 1;
+     * it jumps to put either 1 or 0 on the stack
      *
-     * @param ctx MulDivExpressionContext
-     * @return code
+     * @param binary Binary with a comparison or logical operator
+     * @return null
      */
-    @Override
-    public ArrayList<String> visitMulDivExpression(CompilerParser.MulDivExpressionContext ctx) {
-        //System.out.println("# VISITING MulDivExpression");
-        ArrayList<String> code = new ArrayList<>();
-
-        code.addAll(visit(ctx.left));
-        // the type might have changed
-        visit(ctx.right);
-
-        Type leftType = types.get(ctx.left);
-        Type rightType = types.get(ctx.right);
-
-        Type returnType = Type.getReturnType(leftType, rightType);
-        this.types.put(ctx, returnType);
+    private Void visitCondition(Binary binary) {
+        int localLabelCount = ++labelCount;
 
-        String mnemonic = Helper.getTypeMnemonic(returnType);
+        int falseLabel = this.emitter.newLabel("false_c_" + localLabelCount);
+        int endLabel = this.emitter.newLabel("end_c_" + localLabelCount);
 
-        // some casting might be needed if the types are not the same
-        if (leftType != returnType) {
-            code.add(Helper.getTypeMnemonic(leftType) + "2" + mnemonic);
-            if (returnType == Type.DOUBLE) this.increaseStack(1);
-        }
+        jumpIfFalse(binary, falseLabel);
+        this.emitter.emit(Opcode.ICONST_1);
+        this.emitter.emitJump(Opcode.GOTO, endLabel);
+        this.emitter.placeLabel(falseLabel);
+        this.emitter.emit(Opcode.ICONST_0);
+        this.emitter.placeLabel(endLabel);
 
-        code.addAll(visit(ctx.right));
+        return null;
+    }
 
-        if (rightType != returnType) {
-            code.add(Helper.getTypeMnemonic(rightType) + "2" + mnemonic);
-            if (returnType == Type.DOUBLE) this.increaseStack(1);
-        }
+    /**
+     * Jump to the label when the condition is false, otherwise continue with the next instruction
+     */
+    private void jumpIfFalse(Expression condition, int label) {
+        jump(condition, label, false);
+    }
 
-        code.add(mnemonic + Helper.getOperatorAsWord(ctx.op.getText()));
-        this.resetStack();
-        return code;
+    /**
+     * Jump to the label when the condition is true, otherwise continue with the next instruction
+     */
+    private void jumpIfTrue(Expression condition, int label) {
+        jump(condition, label, true);
     }
 
     /**
-     * if (2 == 1) { statements }
+     * Compile a condition straight to jumps, no 0 or 1 is put on the stack
+     * && and || only evaluate their right side when it can change the outcome
      *
-     * @param ctx IfStatementContext
-     * @return code
+     * @param condition  a boolean expression
+     * @param label      where to jump
+     * @param jumpIfTrue jump when the condition is true instead of false
      */
-    @Override
-    public ArrayList<String> visitIfStatement(CompilerParser.IfStatementContext ctx) {
-        //System.out.println("# VISITING IfStatement");
+    private void jump(Expression condition, int label, boolean jumpIfTrue) {
+        if (condition instanceof Constant) {
+            // the outcome is known, either always jump or never
+            if ((Boolean) ((Constant) condition).getValue() == jumpIfTrue) {
+                this.emitter.emitJump(Opcode.GOTO, label);
+            }
+            return;
+        }
 
-        int localLabelCount = ++labelCount;
+        if (condition instanceof Unary && ((Unary) condition).getOperator() == Operator.NOT) {
+            jump(((Unary) condition).getValue(), label, !jumpIfTrue);
+            return;
+        }
+
+        if (!(condition instanceof Binary)) {
+            // any other boolean value is 0 or 1 on the stack
+            visit(condition);
+            this.emitter.emitJump(jumpIfTrue ? Opcode.IFNE : Opcode.IFEQ, label);
+            return;
+        }
 
-        ArrayList<String> code = new ArrayList<>();
+        Binary binary = (Binary) condition;
+        Operator operator = binary.getOperator();
 
-        // first add the contents of the expression: if (expression)
-        code.addAll(visit(ctx.expression()));
+        if (operator.isLogical()) {
+            // a && b jumps to the label as soon as a is false, a || b as soon as a is true
+            if ((operator == Operator.AND) != jumpIfTrue) {
+                jump(binary.getLeft(), label, jumpIfTrue);
+                jump(binary.getRight(), label, jumpIfTrue);
+            } else {
+                int skipLabel = this.emitter.newLabel("skip_c_" + ++labelCount);
+                jump(binary.getLeft(), skipLabel, !jumpIfTrue);
+                jump(binary.getRight(), label, jumpIfTrue);
+                this.emitter.placeLabel(skipLabel);
+            }
+            return;
+        }
 
-        String endLabel = "end_if_" + localLabelCount;
-        String thenLabel = "then_if_" + localLabelCount;
-        String elseLabel = "else_if_" + localLabelCount;
+        // a comparison, jumping when it is false means jumping when the opposite is true
+        Operator comparison = jumpIfTrue ? operator : operator.negate();
 
-        // the expression puts either 0 or 1 on the stack
-        // compare it to 0
-        code.add("ifne " + thenLabel);
+        visit(binary.getLeft());
+        visit(binary.getRight());
 
-        code.add(elseLabel + ":");
-        // only add the else code if it actually exists
-        if (ctx.ELSE() != null && ctx.statement(1) != null) {
-            code.addAll(visit(ctx.statement(1)));
+        if (binary.getOperandType() == Type.DOUBLE) {
+            // NaN has to make every comparison except != false
+            // dcmpg turns it into 1 and dcmpl into -1, pick the one that fails the original comparison
+            boolean greater = operator == Operator.LT || operator == Operator.LE;
+            this.emitter.emit(greater ? Opcode.DCMPG : Opcode.DCMPL);
+            this.emitter.emitJump(Helper.getZeroCompareOpcode(comparison), label);
+        } else {
+            this.emitter.emitJump(Helper.getCompareOpcode(comparison), label);
         }
-        code.add("goto " + endLabel);
-
-        code.add(thenLabel + ":");
-        code.addAll(visit(ctx.statement(0)));
-        code.add(endLabel + ":");
-        return code;
     }
 
     /**
-     * e.g 1 == 1
+     * if (2 == 1) { statements }
      *
-     * @param ctx ComparisonExpressionContext
-     * @return code
+     * @param ifStatement If
+     * @return null
      */
     @Override
-    public ArrayList<String> visitComparisonExpression(CompilerParser.ComparisonExpressionContext ctx) {
-        //System.out.println("# VISITING ComparisonExpression");
-
-        ArrayList<String> code = new ArrayList<>();
+    public Void visitIf(If ifStatement) {
+        //System.out.println("# VISITING IfStatement");
 
         int localLabelCount = ++labelCount;
 
-        code.addAll(visit(ctx.left));
-        // the type might have changed
-        visit(ctx.right);
+        int endLabel = this.emitter.newLabel("end_if_" + localLabelCount);
+        int elseLabel = this.emitter.newLabel("else_if_" + localLabelCount);
 
-        Type leftType = types.get(ctx.left);
-        Type rightType = types.get(ctx.right);
-        Type returnType = Type.getReturnType(leftType, rightType);
-        String mnemonic = Helper.getTypeMnemonic(returnType);
-        String operator = Helper.getOperatorAsWord(ctx.op.getText());
+        // skip the then code when the expression is false: if (expression)
+        jumpIfFalse(ifStatement.getCondition(), ifStatement.getOtherwise() != null ? elseLabel : endLabel);
 
-        if (leftType != returnType) {
-            code.add(Helper.getTypeMnemonic(leftType) + "2" + mnemonic);
-            if (returnType == Type.DOUBLE) this.increaseStack(1);
-        }
-
-        code.addAll(visit(ctx.right));
-
-        if (rightType != returnType) {
-            code.add(Helper.getTypeMnemonic(rightType) + "2" + mnemonic);
-            if (returnType == Type.DOUBLE) this.increaseStack(1);
-        }
-
-        // for comparing doubles some extra work is needed
-        if (returnType == Type.DOUBLE) {
-            code.add("dcmpg");
-            code.add("iconst_0");
+        visit(ifStatement.getThen());
 
+        // only add the else code if it actually exists
+        if (ifStatement.getOtherwise() != null) {
+            this.emitter.emitJump(Opcode.GOTO, endLabel);
+            this.emitter.placeLabel(elseLabel);
+            visit(ifStatement.getOtherwise());
         }
 
-        // just put 1 or 0 on the stack meaning true or false
-        code.add("if_icmp" + operator + " then_c_" + localLabelCount);
-        code.add("else_c_" + localLabelCount + ":");
-        code.add("iconst_0");
-        code.add("goto end_c_" + localLabelCount);
-        code.add("then_c_" + localLabelCount + ":");
-        code.add("iconst_1");
-        code.add("end_c_" + localLabelCount + ":");
-
-        return code;
-    }
-
-    /**
-     * e.g 1 == 1 && 2 == 2
-     *
-     * @param ctx LogicalExpressionContext
-     * @return code
-     */
-    @Override
-    public ArrayList<String> visitLogicalExpression(CompilerParser.LogicalExpressionContext ctx) {
-        //System.out.println("# VISITING LogicalExpression");
-        ArrayList<String> code = new ArrayList<>();
-        String operator = Helper.getOperatorAsWord(ctx.op.getText());
-        code.addAll(visit(ctx.left));
-        code.addAll(visit(ctx.right));
-
-        // add the bitwise operator
-        // e.g iand, ior
-        code.add(operator);
-        return code;
-    }
-
-    /**
-     * e.g !true
-     *
-     * @param ctx NotExpressionContext
-     * @return code
-     */
-    @Override
-    public ArrayList<String> visitNotExpression(CompilerParser.NotExpressionContext ctx) {
-        //System.out.println("# VISITING NotExpression");
-        ArrayList<String> code = new ArrayList<>();
-        // add the code for the children
-        code.addAll(visitChildren(ctx));
-        // flip the result of this code
-        // there has to be some easier bitwise flip solution
-        code.add("iconst_1");
-        code.add("iadd");
-        code.add("iconst_2");
-        code.add("irem");
-        return code;
+        this.emitter.placeLabel(endLabel);
+        return null;
     }
 
     /**
      * e.g while (a < 1) { someCode }
+     * the loop is tested once before it is entered and then at the bottom of every iteration,
+     * so an iteration only takes a single conditional jump back
      *
-     * @param ctx WhileStatementContext
-     * @return code
+     * @param whileStatement While
+     * @return null
      */
     @Override
-    public ArrayList<String> visitWhileStatement(CompilerParser.WhileStatementContext ctx) {
+    public Void visitWhile(While whileStatement) {
         //System.out.println("# VISITING WhileStatement");
-        ArrayList<String> code = new ArrayList<>();
-
         int localLabelCount = ++labelCount;
 
-        String beforeLabel = "before_w_" + localLabelCount;
-        String thenLabel = "then_w_" + localLabelCount;
-        String endLabel = "end_w_" + localLabelCount;
-
-        code.add(beforeLabel + ":");
-        code.addAll(visit(ctx.expression()));
+        int bodyLabel = this.emitter.newLabel("body_w_" + localLabelCount);
+        int endLabel = this.emitter.newLabel("end_w_" + localLabelCount);
 
-        // the expressions put either 1 or 0 on the stack
-        // compare it to 0
-        code.add("ifne " + thenLabel);
-        code.add("goto " + endLabel);
-        code.add(thenLabel + ":");
-        code.addAll(visit(ctx.statement()));
-        code.add("goto " + beforeLabel);
-        code.add(endLabel + ":");
+        jumpIfFalse(whileStatement.getCondition(), endLabel);
+        this.emitter.placeLabel(bodyLabel);
+        visit(whileStatement.getBody());
+        jumpIfTrue(whileStatement.getCondition(), bodyLabel);
+        this.emitter.placeLabel(endLabel);
 
-        return code;
+        return null;
     }
 
     /**
      * e.g for (var a = 1; a < 10; a = a + 1) { someCode }
+     * tested at the bottom like a while loop
      *
-     * @param ctx ForStatementContext
-     * @return code
+     * @param forStatement For
+     * @return null
      */
     @Override
-    public ArrayList<String> visitForStatement(CompilerParser.ForStatementContext ctx) {
+    public Void visitFor(For forStatement) {
         //System.out.println("# VISITING ForStatement");
 
-        ArrayList<String> code = new ArrayList<>();
-
         int localLabelCount = ++labelCount;
 
-        String beforeLabel = "before_f_" + localLabelCount;
-        String thenLabel = "then_f_" + localLabelCount;
-        String endLabel = "end_f_" + localLabelCount;
-
+        int bodyLabel = this.emitter.newLabel("body_f_" + localLabelCount);
+        int endLabel = this.emitter.newLabel("end_f_" + localLabelCount);
 
-        // FOR '(' variableStatement ';' expression ';' assignmentStatement ')' statement
-        // a new scope is needed for the variable declaration
-        this.symbolTable.openScope();
-
-        code.addAll(visit(ctx.variableStatement()));
-
-        code.add(beforeLabel + ":");
-        code.addAll(visit(ctx.expression()));
-        code.add("ifne " + thenLabel);
-        code.add("goto " + endLabel);
-        code.add(thenLabel + ":");
-        code.addAll(visit(ctx.statement()));
-        code.addAll(visit(ctx.assignmentStatement()));
-        code.add("goto " + beforeLabel);
-        code.add(endLabel + ":");
+        // the initializer and the update can be removed by the optimizer
+        if (forStatement.getInitializer() != null) {
+            visit(forStatement.getInitializer());
+        }
 
-        this.symbolTable.closeScope();
+        jumpIfFalse(forStatement.getCondition(), endLabel);
+        this.emitter.placeLabel(bodyLabel);
+        visit(forStatement.getBody());
+        if (forStatement.getUpdate() != null) {
+            visit(forStatement.getUpdate());
+        }
+        jumpIfTrue(forStatement.getCondition(), bodyLabel);
+        this.emitter.placeLabel(endLabel);
 
+        releaseSlots(forStatement.getSymbols());
 
-        return code;
+        return null;
     }
 
     /**
-     * e.g. 1
+     * e.g. 1, 1.1 or true
      *
-     * @param ctx IntConstExpressionContext
-     * @return code
+     * @param constant Constant
+     * @return null
      */
     @Override
-    public ArrayList<String> visitIntConstExpression(CompilerParser.IntConstExpressionContext ctx) {
-        //System.out.println("# VISITING IntConstExpression");
-        ArrayList<String> code = new ArrayList<>();
-        code.add("ldc " + ctx.getText());
-        this.increaseStack(1);
-        return code;
-    }
-
-    /**
-     * e.g. 1.1
-     *
-     * @param ctx DoubleConstExpressionContext
-     * @return code
-     */
-    @Override
-    public ArrayList<String> visitDoubleConstExpression(CompilerParser.DoubleConstExpressionContext ctx) {
-        //System.out.println("# VISITING DoubleConstExpression");
-        ArrayList<String> code = new ArrayList<>();
-        code.add("ldc2_w " + ctx.getText());
-        this.increaseStack(2);
-        return code;
-    }
+    public Void visitConstant(Constant constant) {
+        switch (constant.getType()) {
+            case INT:
+                this.emitter.emitConstant(Opcode.LDC, constant.getValue());
+                break;
+            case DOUBLE:
+                this.emitter.emitConstant(Opcode.LDC2_W, constant.getValue());
+                break;
+            default:
+                this.emitter.emit((Boolean) constant.getValue() ? Opcode.ICONST_1 : Opcode.ICONST_0);
+                break;
+        }
 
-    /**
-     * e.g. true
-     *
-     * @param ctx BooleanConstExpressionContext
-     * @return code
-     */
-    @Override
-    public ArrayList<String> visitBooleanConstExpression(CompilerParser.BooleanConstExpressionContext ctx) {
-        //System.out.println("# VISITING BooleanConstExpression");
-        ArrayList<String> code = new ArrayList<>();
-        code.add("iconst_" + Helper.getBooleanValue(ctx.getText()));
-        this.increaseStack(1);
-        return code;
+        return null;
     }
 
     /**
      * e.g a
      *
-     * @param ctx VariableConstExpressionContext
-     * @return code
+     * @param load Load
+     * @return null
      */
     @Override
-    public ArrayList<String> visitVariableConstExpression(CompilerParser.VariableConstExpressionContext ctx) {
+    public Void visitLoad(Load load) {
         //System.out.println("# VISITING VariableConstExpression");
-        ArrayList<String> code = new ArrayList<>();
-        Symbol symbol = symbolTable.retrieve(ctx.getText());
-        // a value is being referenced so it has to be in the symboltable
-        if (symbol != null) {
-            code.add(Helper.getTypeMnemonic(symbol.getType()) + "load " + symbol.getAddress());
-            this.types.put(ctx, symbol.getType());
-            this.increaseStack(symbol.getType() == Type.DOUBLE ? 2 : 1);
-        }
-
+        Symbol symbol = load.getSymbol();
 
-        return code;
-    }
+        this.emitter.emit(Helper.getLoadOpcode(symbol.getType()), symbol.getAddress());
 
-    @Override
-    public ArrayList<String> visitStatement(CompilerParser.StatementContext ctx) {
-        ArrayList<String> code = new ArrayList<>();
-        code.addAll(visitChildren(ctx));
-        return code;
-    }
-
-    @Override
-    public ArrayList<String> visitStatementList(CompilerParser.StatementListContext ctx) {
-        ArrayList<String> code = new ArrayList<>();
-        code.addAll(visitChildren(ctx));
-        return code;
+        return null;
     }
 }
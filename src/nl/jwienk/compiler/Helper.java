@@ -1,5 +1,7 @@
 package nl.jwienk.compiler;
 
+import nl.jwienk.compiler.ir.Operator;
+
 public class Helper {
 
     public static String getTypeMnemonic(Type type) {
@@ -75,4 +77,89 @@ public class Helper {
         }
     }
 
+    public static Opcode getLoadOpcode(Type type) {
+        return type == Type.DOUBLE ? Opcode.DLOAD : Opcode.ILOAD;
+    }
+
+    public static Opcode getStoreOpcode(Type type) {
+        return type == Type.DOUBLE ? Opcode.DSTORE : Opcode.ISTORE;
+    }
+
+    /**
+     * e.g. ADD on a double becomes dadd
+     */
+    public static Opcode getArithmeticOpcode(Operator operator, Type type) {
+        boolean isDouble = type == Type.DOUBLE;
+        switch (operator) {
+            case ADD:
+                return isDouble ? Opcode.DADD : Opcode.IADD;
+            case SUB:
+                return isDouble ? Opcode.DSUB : Opcode.ISUB;
+            case MUL:
+                return isDouble ? Opcode.DMUL : Opcode.IMUL;
+            case DIV:
+                return isDouble ? Opcode.DDIV : Opcode.IDIV;
+            case NEG:
+                return isDouble ? Opcode.DNEG : Opcode.INEG;
+            case SHL:
+                return Opcode.ISHL;
+            case SHR:
+                return Opcode.ISHR;
+            case USHR:
+                return Opcode.IUSHR;
+            case AND:
+                return Opcode.IAND;
+            case OR:
+                return Opcode.IOR;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The jump that compares 2 ints
+     * e.g. LT becomes if_icmplt
+     */
+    public static Opcode getCompareOpcode(Operator operator) {
+        switch (operator) {
+            case EQ:
+                return Opcode.IF_ICMPEQ;
+            case NE:
+                return Opcode.IF_ICMPNE;
+            case LT:
+                return Opcode.IF_ICMPLT;
+            case LE:
+                return Opcode.IF_ICMPLE;
+            case GT:
+                return Opcode.IF_ICMPGT;
+            case GE:
+                return Opcode.IF_ICMPGE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * The jump that compares an int to 0, e.g. the result of dcmpg
+     * e.g. LT becomes iflt
+     */
+    public static Opcode getZeroCompareOpcode(Operator operator) {
+        switch (operator) {
+            case EQ:
+                return Opcode.IFEQ;
+            case NE:
+                return Opcode.IFNE;
+            case LT:
+                return Opcode.IFLT;
+            case LE:
+                return Opcode.IFLE;
+            case GT:
+                return Opcode.IFGT;
+            case GE:
+                return Opcode.IFGE;
+            default:
+                return null;
+        }
+    }
+
 }
@@ -0,0 +1,29 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Pair;
+
+/**
+ * An identifier with the number of its name, the same name always has the same number in a program
+ * see IdentifierTokenFactory
+ */
+public class IdentifierToken extends CommonToken {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+
+    public IdentifierToken(Pair<TokenSource, CharStream> source, int type, int channel, int start, int stop, int id) {
+        super(source, type, channel, start, stop);
+        this.id = id;
+    }
+
+    /**
+     * @return the number of the name, from 0 up to the number of different names in the program
+     */
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,52 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numbers the names of the identifiers while they are lexed, so the symbol table can look them up by number
+ * Every program needs its own factory, e.g. lexer.setTokenFactory(new IdentifierTokenFactory())
+ */
+public class IdentifierTokenFactory extends CommonTokenFactory {
+
+    private Map<String, Integer> ids = new HashMap<>();
+    private List<String> names = new ArrayList<>();
+
+    @Override
+    public CommonToken create(Pair<TokenSource, CharStream> source, int type, String text, int channel,
+                              int start, int stop, int line, int charPositionInLine) {
+        if (type != CompilerLexer.IDENTIFIER) {
+            return super.create(source, type, text, channel, start, stop, line, charPositionInLine);
+        }
+        if (text == null) {
+            text = source.b.getText(Interval.of(start, stop));
+        }
+
+        int id = intern(text);
+        IdentifierToken token = new IdentifierToken(source, type, channel, start, stop, id);
+        token.setLine(line);
+        token.setCharPositionInLine(charPositionInLine);
+        // every occurrence shares the name, it is not taken from the input again
+        token.setText(names.get(id));
+        return token;
+    }
+
+    private int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+}
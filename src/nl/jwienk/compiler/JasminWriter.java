@@ -0,0 +1,164 @@
+package nl.jwienk.compiler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the instructions of an Emitter as a jasmin file
+ * The text is encoded into a buffer that is flushed to the channel whenever it is full,
+ * so the whole program never exists as a single string.
+ */
+public class JasminWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final String START_PROG = ".class public {{name}}\n" +
+            ".super java/lang/Object\n" +
+            "\n" +
+            ";\n" +
+            "; standard initializer (calls java.lang.Object's initializer)\n" +
+            ";\n" +
+            ".method public <init>()V\n" +
+            "\taload_0\n" +
+            "\tinvokenonvirtual java/lang/Object/<init>()V\n" +
+            "\treturn\n" +
+            ".end method\n" +
+            "\n" +
+            ";\n" +
+            "; main() method\n" +
+            ";\n" +
+            ".method public static main([Ljava/lang/String;)V\n";
+
+    private static final String END_PROG = "\nreturn\n\n.end method\n";
+
+    private String name;
+    private WritableByteChannel channel;
+    private ByteBuffer buffer;
+
+    public JasminWriter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param emitter the instructions of the main method
+     * @param channel e.g. a FileChannel or Channels.newChannel(System.out)
+     */
+    public void write(Emitter emitter, WritableByteChannel channel) throws IOException {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        put(START_PROG.replace("{{name}}", name));
+        put(".limit locals ").put(emitter.getMaxLocals()).put('\n');
+        put(".limit stack ").put(emitter.getMaxStack()).put('\n');
+
+        for (int i = 0; i < emitter.size(); i++) {
+            if (emitter.isLabel(i)) {
+                put(emitter.getLabelName(emitter.getOperand(i))).put(':').put('\n');
+                continue;
+            }
+
+            Opcode opcode = emitter.getOpcode(i);
+            put(opcode.getMnemonic());
+
+            switch (opcode.getOperand()) {
+                case NONE:
+                    break;
+                case BYTE:
+                case SHORT:
+                case LOCAL:
+                    put(' ').put(emitter.getOperand(i));
+                    break;
+                case INCREMENT:
+                    put(' ').put(emitter.getOperand(i)).put(' ').put(emitter.getExtra(i));
+                    break;
+                case CONSTANT:
+                    Object constant = emitter.getConstant(i);
+                    if (constant instanceof String) {
+                        put(' ').put('"').put((String) constant).put('"');
+                    } else if (constant instanceof Double) {
+                        // without the suffix jasmin reads the number as a float
+                        put(' ').put(constant.toString()).put('d');
+                    } else {
+                        put(' ').put(constant.toString());
+                    }
+                    break;
+                case BRANCH:
+                    put(' ').put(emitter.getLabelName(emitter.getOperand(i)));
+                    break;
+                case FIELD:
+                    Emitter.Member field = (Emitter.Member) emitter.getConstant(i);
+                    put(' ').put(field.getOwner()).put('/').put(field.getName()).put(' ').put(field.getDescriptor());
+                    break;
+                case METHOD:
+                    Emitter.Member method = (Emitter.Member) emitter.getConstant(i);
+                    put(' ').put(method.getOwner()).put('/').put(method.getName()).put(method.getDescriptor());
+                    break;
+            }
+            put('\n');
+        }
+
+        put(END_PROG);
+        flush();
+    }
+
+    private JasminWriter put(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                put(c);
+            } else {
+                // only names can contain other characters, encode the rest of the text at once
+                byte[] bytes = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                for (byte b : bytes) {
+                    putByte(b);
+                }
+                break;
+            }
+        }
+        return this;
+    }
+
+    private JasminWriter put(char c) throws IOException {
+        putByte((byte) c);
+        return this;
+    }
+
+    /**
+     * Write the digits of a number without creating a string
+     */
+    private JasminWriter put(int value) throws IOException {
+        if (value < 0) {
+            put('-');
+            if (value == Integer.MIN_VALUE) {
+                return put("2147483648");
+            }
+            value = -value;
+        }
+        int divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            put((char) ('0' + value / divisor % 10));
+            divisor /= 10;
+        }
+        return this;
+    }
+
+    private void putByte(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put(b);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,116 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Block;
+import nl.jwienk.compiler.ir.For;
+import nl.jwienk.compiler.ir.If;
+import nl.jwienk.compiler.ir.IrRewriter;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.ir.While;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the stores whose value is never read
+ * The tree is walked backwards from the end of the program, keeping the variables whose current value
+ * can still be loaded. A store to any other variable is dead, its value is overwritten or its scope ends first.
+ * The loads of a dead store do not count, so var b = 5; b = b * 3; loses both stores.
+ * A store whose value can throw is never dead.
+ * Loops are not repeated until nothing changes, every variable a loop loads counts as read at its start
+ * and at the end of every iteration, so inside a loop only stores that are overwritten before the
+ * next load are dead.
+ */
+public class LivenessAnalyzer extends IrRewriter {
+
+    private Set<Symbol> live = new HashSet<>();
+    private Set<Assign> deadStores = new HashSet<>();
+
+    public static Set<Assign> findDeadStores(Program program) {
+        LivenessAnalyzer analyzer = new LivenessAnalyzer();
+        analyzer.rewrite(program);
+        return analyzer.deadStores;
+    }
+
+    @Override
+    public Node visitProgram(Program program) {
+        visitStatements(program.getStatements());
+        return program;
+    }
+
+    @Override
+    public Node visitBlock(Block block) {
+        visitStatements(block.getStatements());
+        return block;
+    }
+
+    private void visitStatements(List<Node> statements) {
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            rewrite(statements.get(i));
+        }
+    }
+
+    @Override
+    public Node visitAssign(Assign assign) {
+        if (!live.remove(assign.getSymbol()) && !DeadCodeEliminator.canThrow(assign.getValue())) {
+            deadStores.add(assign);
+        } else {
+            rewrite(assign.getValue());
+        }
+        return assign;
+    }
+
+    /**
+     * A variable is live before the if when either branch or the condition can load it
+     */
+    @Override
+    public Node visitIf(If ifStatement) {
+        Set<Symbol> after = new HashSet<>(live);
+        rewrite(ifStatement.getThen());
+        Set<Symbol> then = live;
+
+        live = after;
+        rewrite(ifStatement.getOtherwise());
+        live.addAll(then);
+        rewrite(ifStatement.getCondition());
+        return ifStatement;
+    }
+
+    @Override
+    public Node visitWhile(While whileStatement) {
+        Set<Symbol> loop = enterLoop(whileStatement);
+        rewrite(whileStatement.getBody());
+        live.addAll(loop);
+        return whileStatement;
+    }
+
+    /**
+     * The update runs after the body, the initializer only once before the first condition
+     */
+    @Override
+    public Node visitFor(For forStatement) {
+        Set<Symbol> loop = enterLoop(forStatement);
+        rewrite(forStatement.getUpdate());
+        rewrite(forStatement.getBody());
+        live.addAll(loop);
+        rewrite(forStatement.getInitializer());
+        return forStatement;
+    }
+
+    /**
+     * @return the variables that are live at the start of every iteration, they are live after the body as well
+     */
+    private Set<Symbol> enterLoop(Node loop) {
+        live.addAll(UsageCounter.count(loop).getLoadedSymbols());
+        return new HashSet<>(live);
+    }
+
+    @Override
+    public Node visitLoad(Load load) {
+        live.add(load.getSymbol());
+        return load;
+    }
+}
@@ -0,0 +1,200 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Binary;
+import nl.jwienk.compiler.ir.Block;
+import nl.jwienk.compiler.ir.Constant;
+import nl.jwienk.compiler.ir.Convert;
+import nl.jwienk.compiler.ir.Expression;
+import nl.jwienk.compiler.ir.For;
+import nl.jwienk.compiler.ir.IrRewriter;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Operator;
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.ir.Unary;
+import nl.jwienk.compiler.ir.While;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves calculations out of loops when none of their variables change inside the loop
+ * e.g. while (a < b * 2) { print(c + 1); } becomes
+ * { var t1 = b * 2; var t2 = c + 1; while (a < t1) { print(t2); } }
+ * Inner loops are handled first, so a calculation moves out as far as it can.
+ * A calculation that can throw stays where it is, the loop might not run at all.
+ */
+public class LoopInvariantMover extends IrRewriter {
+
+    private int tempCount = 0;
+    // the variables created by this pass, an inner loop's variable can move out again with an outer loop
+    private Set<Symbol> created = new HashSet<>();
+
+    public Program move(Program program) {
+        return (Program) rewrite(program);
+    }
+
+    @Override
+    public Node visitWhile(While whileStatement) {
+        While loop = (While) super.visitWhile(whileStatement);
+
+        Hoister hoister = new Hoister(UsageCounter.count(loop));
+        Expression condition = hoister.rewrite(loop.getCondition());
+        Node body = hoister.rewrite(loop.getBody());
+
+        if (hoister.temps.isEmpty()) {
+            return loop;
+        }
+        return hoister.wrap(new While(condition, body));
+    }
+
+    @Override
+    public Node visitFor(For forStatement) {
+        For loop = (For) super.visitFor(forStatement);
+
+        // the variable of the initializer does not exist before the loop, so it counts as changed
+        Hoister hoister = new Hoister(UsageCounter.count(loop));
+        Expression condition = hoister.rewrite(loop.getCondition());
+        Node body = hoister.rewrite(loop.getBody());
+        Assign update = (Assign) hoister.rewrite(loop.getUpdate());
+
+        if (hoister.temps.isEmpty()) {
+            return loop;
+        }
+        return hoister.wrap(new For(loop.getInitializer(), condition, update, body, loop.getSymbols()));
+    }
+
+    /**
+     * Replaces the invariant calculations of a single loop by temporary variables
+     */
+    private class Hoister extends IrRewriter {
+
+        private final UsageCounter usages;
+        private final List<Symbol> temps = new ArrayList<>();
+        private final List<Expression> values = new ArrayList<>();
+
+        Hoister(UsageCounter usages) {
+            this.usages = usages;
+        }
+
+        /**
+         * The variable of an inner loop moves out completely instead of being copied every iteration
+         */
+        @Override
+        public Node visitAssign(Assign assign) {
+            if (created.contains(assign.getSymbol()) && isInvariant(assign.getValue())
+                    && !DeadCodeEliminator.canThrow(assign.getValue())) {
+                temps.add(assign.getSymbol());
+                values.add(assign.getValue());
+                return null;
+            }
+            return super.visitAssign(assign);
+        }
+
+        @Override
+        public Node visitBlock(Block block) {
+            Block rewritten = (Block) super.visitBlock(block);
+            List<Symbol> symbols = new ArrayList<>(rewritten.getSymbols());
+            if (!symbols.removeAll(temps)) {
+                return rewritten;
+            }
+            return new Block(rewritten.getStatements(), symbols);
+        }
+
+        @Override
+        public Node visitBinary(Binary binary) {
+            return binary.getOperator().isArithmetic() ? hoist(binary) : super.visitBinary(binary);
+        }
+
+        @Override
+        public Node visitUnary(Unary unary) {
+            return unary.getOperator() == Operator.NEG ? hoist(unary) : super.visitUnary(unary);
+        }
+
+        @Override
+        public Node visitConvert(Convert convert) {
+            return hoist(convert);
+        }
+
+        /**
+         * @return a load of the temporary variable, or the expression with its invariant parts replaced
+         */
+        private Node hoist(Expression expression) {
+            if (!isInvariant(expression) || DeadCodeEliminator.canThrow(expression)) {
+                if (expression instanceof Binary) return super.visitBinary((Binary) expression);
+                if (expression instanceof Unary) return super.visitUnary((Unary) expression);
+                return super.visitConvert((Convert) expression);
+            }
+
+            // the same calculation twice shares a variable
+            for (int i = 0; i < values.size(); i++) {
+                if (isSame(values.get(i), expression)) {
+                    return new Load(temps.get(i));
+                }
+            }
+
+            Symbol temp = new Symbol(null, "$invariant_" + ++tempCount, expression.getType());
+            created.add(temp);
+            temps.add(temp);
+            values.add(expression);
+            return new Load(temp);
+        }
+
+        private boolean isInvariant(Expression expression) {
+            if (expression instanceof Load) {
+                return usages.getStores(((Load) expression).getSymbol()) == 0;
+            }
+            if (expression instanceof Binary) {
+                return isInvariant(((Binary) expression).getLeft()) && isInvariant(((Binary) expression).getRight());
+            }
+            if (expression instanceof Unary) {
+                return isInvariant(((Unary) expression).getValue());
+            }
+            if (expression instanceof Convert) {
+                return isInvariant(((Convert) expression).getValue());
+            }
+            return expression instanceof Constant;
+        }
+
+        /**
+         * @return a block that calculates the temporary variables and then runs the loop
+         */
+        private Block wrap(Node loop) {
+            List<Node> statements = new ArrayList<>();
+            for (int i = 0; i < temps.size(); i++) {
+                statements.add(new Assign(temps.get(i), values.get(i), true));
+            }
+            statements.add(loop);
+            return new Block(statements, temps);
+        }
+    }
+
+    /**
+     * @return true if both expressions always calculate the same value
+     */
+    static boolean isSame(Expression a, Expression b) {
+        if (a.getClass() != b.getClass() || a.getType() != b.getType()) {
+            return false;
+        }
+        if (a instanceof Constant) {
+            return ((Constant) a).getValue().equals(((Constant) b).getValue());
+        }
+        if (a instanceof Load) {
+            return ((Load) a).getSymbol() == ((Load) b).getSymbol();
+        }
+        if (a instanceof Convert) {
+            return isSame(((Convert) a).getValue(), ((Convert) b).getValue());
+        }
+        if (a instanceof Unary) {
+            return ((Unary) a).getOperator() == ((Unary) b).getOperator()
+                    && isSame(((Unary) a).getValue(), ((Unary) b).getValue());
+        }
+        Binary left = (Binary) a;
+        Binary right = (Binary) b;
+        return left.getOperator() == right.getOperator()
+                && isSame(left.getLeft(), right.getLeft()) && isSame(left.getRight(), right.getRight());
+    }
+}
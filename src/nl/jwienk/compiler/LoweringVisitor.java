@@ -0,0 +1,433 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Binary;
+import nl.jwienk.compiler.ir.Block;
+import nl.jwienk.compiler.ir.Constant;
+import nl.jwienk.compiler.ir.Convert;
+import nl.jwienk.compiler.ir.Expression;
+import nl.jwienk.compiler.ir.For;
+import nl.jwienk.compiler.ir.If;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Operator;
+import nl.jwienk.compiler.ir.Print;
+import nl.jwienk.compiler.ir.Program;
+import nl.jwienk.compiler.ir.Unary;
+import nl.jwienk.compiler.ir.While;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the parse tree into the intermediate representation
+ * Every expression gets its final type, every variable reference its symbol
+ * and conversions between int and double become explicit nodes
+ * When it checks the types itself, the TypeVisitor pass is not needed. It then reports the same errors
+ * in the same order: the types it checks with are those the TypeVisitor would give, where a variable
+ * keeps the type of its declaration, and an int that is too large is only reported when there is no
+ * type error in the rest of the program.
+ */
+public class LoweringVisitor extends CompilerBaseVisitor<Node> {
+
+    private SymbolTable symbolTable;
+    private TypeAnnotations types;
+    // the symbols of every open scope, and the scope each symbol belongs to
+    private Deque<List<Symbol>> scopes;
+    private Map<Symbol, List<Symbol>> owners;
+    private int symbolCount = 0;
+
+    private boolean check;
+    // the declaration of every symbol that replaced another one, its type is checked as declared
+    private Map<Symbol, ParserRuleContext> declarations;
+    private CompilerException deferred;
+
+    /**
+     * @param types the types of the TypeVisitor
+     */
+    public LoweringVisitor(TypeAnnotations types) {
+        this(types, false);
+    }
+
+    /**
+     * @param types the types of the TypeVisitor, or empty ones to fill when check
+     * @param check true if the types are checked while lowering, as the TypeVisitor does
+     */
+    public LoweringVisitor(TypeAnnotations types, boolean check) {
+        this.types = types;
+        this.check = check;
+        this.symbolTable = new SymbolTable();
+        this.scopes = new ArrayDeque<>();
+        this.owners = new HashMap<>();
+        this.declarations = new HashMap<>();
+    }
+
+    private void openScope() {
+        this.symbolTable.openScope();
+        this.scopes.push(new ArrayList<>());
+    }
+
+    /**
+     * @return every symbol that was declared in the scope
+     */
+    private List<Symbol> closeScope() {
+        this.symbolTable.closeScope();
+        return this.scopes.pop();
+    }
+
+    /**
+     * @param scope the symbols of the scope the name was declared in
+     */
+    private void addSymbol(List<Symbol> scope, Symbol symbol) {
+        scope.add(symbol);
+        this.owners.put(symbol, scope);
+        this.symbolCount++;
+    }
+
+    /**
+     * @return the number of variables, a variable that gets another type counts again
+     */
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    @Override
+    public Node visitProgram(CompilerParser.ProgramContext ctx) {
+        // Open a scope for the root
+        openScope();
+        List<Node> statements = lowerStatements(ctx.statement());
+
+        if (deferred != null) {
+            throw deferred;
+        }
+        return new Program(statements, closeScope());
+    }
+
+    /**
+     * e.g { someCode }
+     *
+     * @param ctx BlockStatementContext
+     * @return Block
+     */
+    @Override
+    public Node visitBlockStatement(CompilerParser.BlockStatementContext ctx) {
+        openScope();
+
+        List<Node> statements = new ArrayList<>();
+        // there might be no code inside
+        if (ctx.statementList() != null) {
+            statements = lowerStatements(ctx.statementList().statement());
+        }
+
+        return new Block(statements, closeScope());
+    }
+
+    private List<Node> lowerStatements(List<CompilerParser.StatementContext> statements) {
+        List<Node> nodes = new ArrayList<>(statements.size());
+        for (CompilerParser.StatementContext statement : statements) {
+            nodes.add(visit(statement));
+        }
+        return nodes;
+    }
+
+    /**
+     * e.g var a [assignmentStatement]
+     *
+     * @param ctx VariableStatementContext
+     * @return Assign
+     */
+    @Override
+    public Node visitVariableStatement(CompilerParser.VariableStatementContext ctx) {
+        Expression value = lower(ctx.assignmentStatement().expression());
+        Token identifier = ctx.assignmentStatement().IDENTIFIER().getSymbol();
+
+        // a variable is being declared so it gets the type of its value
+        Symbol symbol = new Symbol(ctx, identifier.getText(), value.getType());
+        if (check) {
+            types.put(ctx, types.get(ctx.assignmentStatement().expression()));
+        }
+        this.symbolTable.enter(identifier, symbol);
+        addSymbol(this.scopes.peek(), symbol);
+
+        return new Assign(symbol, value, true);
+    }
+
+    /**
+     * e.g. a = 1 + 1;
+     *
+     * @param ctx AssignmentStatementContext
+     * @return Assign
+     */
+    @Override
+    public Node visitAssignmentStatement(CompilerParser.AssignmentStatementContext ctx) {
+        Expression value = lower(ctx.expression());
+        Token identifier = ctx.IDENTIFIER().getSymbol();
+        Symbol symbol = this.symbolTable.retrieve(identifier);
+        if (check) {
+            checkDefined(ctx, symbol);
+            types.put(ctx, types.get(ctx.expression()));
+        }
+
+        // the type can change when reassigned, from here on it is a new variable with the same name
+        if (symbol.getType() != value.getType()) {
+            // it lives as long as the variable it replaces, both may still be used in a loop
+            List<Symbol> scope = this.owners.get(symbol);
+            Symbol replaced = symbol;
+            symbol = new Symbol(ctx, identifier.getText(), value.getType());
+            if (check) {
+                declarations.put(symbol, getDeclaration(replaced));
+            }
+            this.symbolTable.replace(identifier, symbol);
+            addSymbol(scope, symbol);
+            return new Assign(symbol, value, true);
+        }
+
+        return new Assign(symbol, value, false);
+    }
+
+    @Override
+    public Node visitPrintStatement(CompilerParser.PrintStatementContext ctx) {
+        if (check) {
+            types.put(ctx, Type.METHOD);
+        }
+        return new Print(lower(ctx.expression()));
+    }
+
+    @Override
+    public Node visitIfStatement(CompilerParser.IfStatementContext ctx) {
+        Expression condition = lower(ctx.expression());
+        checkCondition(ctx, ctx.expression(), "Expression should evaluate to a boolean value");
+        Node then = visit(ctx.statement(0));
+        Node otherwise = ctx.ELSE() != null && ctx.statement(1) != null ? visit(ctx.statement(1)) : null;
+
+        return new If(condition, then, otherwise);
+    }
+
+    @Override
+    public Node visitWhileStatement(CompilerParser.WhileStatementContext ctx) {
+        Expression condition = lower(ctx.expression());
+        checkCondition(ctx, ctx.expression(), "while expression should evaluate to boolean value");
+        Node body = visit(ctx.statement());
+        if (check) {
+            types.put(ctx, Type.STATEMENT);
+        }
+        return new While(condition, body);
+    }
+
+    @Override
+    public Node visitForStatement(CompilerParser.ForStatementContext ctx) {
+        // a new scope is needed for the variable declaration
+        openScope();
+
+        // lowered in the order the code runs, the body comes before the update
+        Assign initializer = (Assign) visit(ctx.variableStatement());
+        Expression condition = lower(ctx.expression());
+        checkCondition(ctx, ctx.expression(), "for expression should evaluate to boolean value: " + ctx.expression().getText());
+        checkUpdate(ctx.assignmentStatement());
+        Node body = visit(ctx.statement());
+        Assign update = (Assign) visit(ctx.assignmentStatement());
+
+        return new For(initializer, condition, update, body, closeScope());
+    }
+
+    /**
+     * The TypeVisitor checks the update of a for before its body, where a declaration in the body
+     * is not visible yet. Lowering an expression changes no symbols, so its value is lowered once here
+     * to check it, the update itself is lowered after the body in the order the code runs.
+     */
+    private void checkUpdate(CompilerParser.AssignmentStatementContext ctx) {
+        if (!check) {
+            return;
+        }
+        // a too large int is reported in the order of lowering, which is after the body
+        CompilerException error = deferred;
+        lower(ctx.expression());
+        deferred = error;
+        checkDefined(ctx, this.symbolTable.retrieve(ctx.IDENTIFIER().getSymbol()));
+    }
+
+    private void checkDefined(CompilerParser.AssignmentStatementContext ctx, Symbol symbol) {
+        if (symbol == null) {
+            throw new CompilerException(ctx, ctx.IDENTIFIER().getText() + " is not defined");
+        }
+    }
+
+    private void checkCondition(ParserRuleContext ctx, CompilerParser.ExpressionContext condition, String message) {
+        if (check && types.get(condition) != Type.BOOLEAN) {
+            throw new CompilerException(ctx, message);
+        }
+    }
+
+    /**
+     * @return the type of both operands, e.g. double for 1 + 1.1
+     */
+    private Type checkOperands(ParserRuleContext ctx, CompilerParser.ExpressionContext leftCtx, CompilerParser.ExpressionContext rightCtx) {
+        Type leftType = types.get(leftCtx);
+        Type rightType = types.get(rightCtx);
+
+        if (!Type.areCompatible(leftType, rightType)) {
+            throw new CompilerException(ctx, "Incompatible types: " + leftType + " " + rightType);
+        }
+        return Type.getReturnType(leftType, rightType);
+    }
+
+    /**
+     * @return the type of the declaration of the symbol, which is the type the TypeVisitor knows it by
+     */
+    private Type getDeclaredType(Symbol symbol) {
+        return types.get(getDeclaration(symbol));
+    }
+
+    private ParserRuleContext getDeclaration(Symbol symbol) {
+        ParserRuleContext declaration = declarations.get(symbol);
+        return declaration != null ? declaration : (ParserRuleContext) symbol.getCtx();
+    }
+
+    @Override
+    public Node visitParenthesesExpression(CompilerParser.ParenthesesExpressionContext ctx) {
+        Node expression = visit(ctx.expression());
+        if (check) {
+            types.put(ctx, types.get(ctx.expression()));
+        }
+        return expression;
+    }
+
+    @Override
+    public Node visitNegateExpression(CompilerParser.NegateExpressionContext ctx) {
+        Expression expression = lower(ctx.expression());
+        if (check) {
+            types.put(ctx, types.get(ctx.expression()));
+        }
+        return new Unary(Operator.NEG, expression);
+    }
+
+    @Override
+    public Node visitNotExpression(CompilerParser.NotExpressionContext ctx) {
+        Expression expression = lower(ctx.expression());
+        if (check) {
+            if (types.get(ctx.expression()) != Type.BOOLEAN) {
+                throw new CompilerException(ctx, "! operator can only be applied to boolean values");
+            }
+            types.put(ctx, Type.BOOLEAN);
+        }
+        return new Unary(Operator.NOT, expression);
+    }
+
+    @Override
+    public Node visitAddSubExpression(CompilerParser.AddSubExpressionContext ctx) {
+        Node node = lowerArithmetic(ctx.left, ctx.right, ctx.op.getText());
+        if (check) {
+            types.put(ctx, checkOperands(ctx, ctx.left, ctx.right));
+        }
+        return node;
+    }
+
+    @Override
+    public Node visitMulDivExpression(CompilerParser.MulDivExpressionContext ctx) {
+        Node node = lowerArithmetic(ctx.left, ctx.right, ctx.op.getText());
+        if (check) {
+            types.put(ctx, checkOperands(ctx, ctx.left, ctx.right));
+        }
+        return node;
+    }
+
+    @Override
+    public Node visitComparisonExpression(CompilerParser.ComparisonExpressionContext ctx) {
+        Node node = lowerArithmetic(ctx.left, ctx.right, ctx.op.getText());
+        if (check) {
+            checkOperands(ctx, ctx.left, ctx.right);
+            types.put(ctx, Type.BOOLEAN);
+        }
+        return node;
+    }
+
+    /**
+     * Both operands are widened to the return type
+     * e.g. 1 + 1.1 becomes (double) 1 + 1.1
+     */
+    private Node lowerArithmetic(CompilerParser.ExpressionContext leftCtx, CompilerParser.ExpressionContext rightCtx, String operator) {
+        Expression left = lower(leftCtx);
+        Expression right = lower(rightCtx);
+        Type returnType = Type.getReturnType(left.getType(), right.getType());
+
+        return new Binary(Operator.fromBinarySymbol(operator), widen(left, returnType), widen(right, returnType));
+    }
+
+    private static Expression widen(Expression expression, Type type) {
+        return expression.getType() == type ? expression : new Convert(expression, type);
+    }
+
+    @Override
+    public Node visitLogicalExpression(CompilerParser.LogicalExpressionContext ctx) {
+        Expression left = lower(ctx.left);
+        Expression right = lower(ctx.right);
+        if (check) {
+            checkOperands(ctx, ctx.left, ctx.right);
+            types.put(ctx, Type.BOOLEAN);
+        }
+        return new Binary(Operator.fromBinarySymbol(ctx.op.getText()), left, right);
+    }
+
+    @Override
+    public Node visitIntConstExpression(CompilerParser.IntConstExpressionContext ctx) {
+        if (check) {
+            types.put(ctx, Type.INT);
+        }
+        try {
+            return new Constant(types.get(ctx), Integer.parseInt(ctx.getText()));
+        } catch (NumberFormatException e) {
+            CompilerException error = new CompilerException(ctx, ctx.getText() + " is too large for an int");
+            if (!check) {
+                throw error;
+            }
+            // a type error further on comes first, like it does when the TypeVisitor runs before
+            if (deferred == null) {
+                deferred = error;
+            }
+            return new Constant(Type.INT, 0);
+        }
+    }
+
+    @Override
+    public Node visitDoubleConstExpression(CompilerParser.DoubleConstExpressionContext ctx) {
+        if (check) {
+            types.put(ctx, Type.DOUBLE);
+        }
+        return new Constant(types.get(ctx), Double.parseDouble(ctx.getText()));
+    }
+
+    @Override
+    public Node visitBooleanConstExpression(CompilerParser.BooleanConstExpressionContext ctx) {
+        if (check) {
+            types.put(ctx, Type.BOOLEAN);
+        }
+        return new Constant(types.get(ctx), Boolean.parseBoolean(ctx.getText()));
+    }
+
+    @Override
+    public Node visitVariableConstExpression(CompilerParser.VariableConstExpressionContext ctx) {
+        Symbol symbol = this.symbolTable.retrieve(ctx.IDENTIFIER().getSymbol());
+        if (check) {
+            if (symbol == null) {
+                throw new CompilerException(ctx, ctx.getText() + " is not defined");
+            }
+            types.put(ctx, getDeclaredType(symbol));
+        }
+        return new Load(symbol);
+    }
+
+    @Override
+    public Node visitStatement(CompilerParser.StatementContext ctx) {
+        return visit(ctx.getChild(0));
+    }
+
+    private Expression lower(CompilerParser.ExpressionContext ctx) {
+        return (Expression) visit(ctx);
+    }
+}
@@ -0,0 +1,127 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds the lexer straight from a memory mapped file, the source is never copied to the heap
+ * Every byte is a character, so only ascii files are read this way, see open.
+ * Only the text of the tokens ends up on the heap.
+ */
+public class MappedCharStream implements CharStream {
+
+    private final ByteBuffer buffer;
+    private final String name;
+    private final int size;
+    private int position = 0;
+
+    private MappedCharStream(ByteBuffer buffer, String name) {
+        this.buffer = buffer;
+        this.name = name;
+        this.size = buffer.limit();
+    }
+
+    /**
+     * Map the file, a file with other characters than ascii is decoded like before
+     *
+     * @return the stream of the file
+     */
+    public static CharStream open(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is larger than 2 GB: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) < 0) {
+                return CharStreams.fromPath(path, Charset.defaultCharset());
+            }
+        }
+        return new MappedCharStream(buffer, path.toString());
+    }
+
+    /**
+     * @return the bytes of the file, without copying them
+     */
+    public ByteBuffer getBytes() {
+        return buffer.duplicate();
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = Math.min(interval.b, size - 1);
+        if (start >= size || stop < start) {
+            return "";
+        }
+        byte[] text = new byte[stop - start + 1];
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(start);
+        duplicate.get(text);
+        return new String(text, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void consume() {
+        if (position >= size) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+        position++;
+    }
+
+    @Override
+    public int LA(int i) {
+        if (i == 0) {
+            return 0;
+        }
+        int index = i < 0 ? position + i : position + i - 1;
+        if (index < 0 || index >= size) {
+            return IntStream.EOF;
+        }
+        return buffer.get(index);
+    }
+
+    @Override
+    public int mark() {
+        // everything stays mapped, there is nothing to keep
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return position;
+    }
+
+    @Override
+    public void seek(int index) {
+        position = Math.min(index, size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String getSourceName() {
+        return name;
+    }
+}
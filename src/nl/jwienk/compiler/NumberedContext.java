@@ -0,0 +1,44 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * A node of the parse tree with its number, the super class of all the generated contexts
+ * The ProgramParser numbers the nodes from 0 while it parses, so what the visitors know about a node
+ * can be kept in arrays indexed by that number, see TypeAnnotations.
+ */
+public class NumberedContext extends ParserRuleContext {
+
+    public static final int NONE = -1;
+
+    private int node = NONE;
+
+    public NumberedContext() {
+    }
+
+    public NumberedContext(ParserRuleContext parent, int invokingStateNumber) {
+        super(parent, invokingStateNumber);
+    }
+
+    /**
+     * A labeled alternative replaces the context of its rule, so it keeps the number of that context
+     */
+    @Override
+    public void copyFrom(ParserRuleContext ctx) {
+        super.copyFrom(ctx);
+        if (ctx instanceof NumberedContext) {
+            this.node = ((NumberedContext) ctx).node;
+        }
+    }
+
+    /**
+     * @return the number of the node, NONE if it was not parsed by the ProgramParser
+     */
+    public int getNode() {
+        return node;
+    }
+
+    public void setNode(int node) {
+        this.node = node;
+    }
+}
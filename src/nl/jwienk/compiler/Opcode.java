@@ -0,0 +1,123 @@
+package nl.jwienk.compiler;
+
+/**
+ * The subset of JVM instructions the compiler can emit, together with their
+ * opcode, the kind of operand that follows them in the class file
+ * and how many stack slots they add or remove.
+ */
+public enum Opcode {
+    NOP(0x00, Operand.NONE, 0),
+    ICONST_M1(0x02, Operand.NONE, 1),
+    ICONST_0(0x03, Operand.NONE, 1),
+    ICONST_1(0x04, Operand.NONE, 1),
+    ICONST_2(0x05, Operand.NONE, 1),
+    ICONST_3(0x06, Operand.NONE, 1),
+    ICONST_4(0x07, Operand.NONE, 1),
+    ICONST_5(0x08, Operand.NONE, 1),
+    DCONST_0(0x0e, Operand.NONE, 2),
+    DCONST_1(0x0f, Operand.NONE, 2),
+    BIPUSH(0x10, Operand.BYTE, 1),
+    SIPUSH(0x11, Operand.SHORT, 1),
+    LDC(0x12, Operand.CONSTANT, 1),
+    LDC_W(0x13, Operand.CONSTANT, 1),
+    LDC2_W(0x14, Operand.CONSTANT, 2),
+    ILOAD(0x15, Operand.LOCAL, 1),
+    DLOAD(0x18, Operand.LOCAL, 2),
+    ALOAD(0x19, Operand.LOCAL, 1),
+    ISTORE(0x36, Operand.LOCAL, -1),
+    DSTORE(0x39, Operand.LOCAL, -2),
+    ASTORE(0x3a, Operand.LOCAL, -1),
+    POP(0x57, Operand.NONE, -1),
+    POP2(0x58, Operand.NONE, -2),
+    DUP(0x59, Operand.NONE, 1),
+    DUP2(0x5c, Operand.NONE, 2),
+    SWAP(0x5f, Operand.NONE, 0),
+    IADD(0x60, Operand.NONE, -1),
+    DADD(0x63, Operand.NONE, -2),
+    ISUB(0x64, Operand.NONE, -1),
+    DSUB(0x67, Operand.NONE, -2),
+    IMUL(0x68, Operand.NONE, -1),
+    DMUL(0x6b, Operand.NONE, -2),
+    IDIV(0x6c, Operand.NONE, -1),
+    DDIV(0x6f, Operand.NONE, -2),
+    IREM(0x70, Operand.NONE, -1),
+    DREM(0x73, Operand.NONE, -2),
+    INEG(0x74, Operand.NONE, 0),
+    DNEG(0x77, Operand.NONE, 0),
+    ISHL(0x78, Operand.NONE, -1),
+    ISHR(0x7a, Operand.NONE, -1),
+    IUSHR(0x7c, Operand.NONE, -1),
+    IAND(0x7e, Operand.NONE, -1),
+    IOR(0x80, Operand.NONE, -1),
+    IXOR(0x82, Operand.NONE, -1),
+    IINC(0x84, Operand.INCREMENT, 0),
+    I2D(0x87, Operand.NONE, 1),
+    D2I(0x8e, Operand.NONE, -1),
+    DCMPL(0x97, Operand.NONE, -3),
+    DCMPG(0x98, Operand.NONE, -3),
+    IFEQ(0x99, Operand.BRANCH, -1),
+    IFNE(0x9a, Operand.BRANCH, -1),
+    IFLT(0x9b, Operand.BRANCH, -1),
+    IFGE(0x9c, Operand.BRANCH, -1),
+    IFGT(0x9d, Operand.BRANCH, -1),
+    IFLE(0x9e, Operand.BRANCH, -1),
+    IF_ICMPEQ(0x9f, Operand.BRANCH, -2),
+    IF_ICMPNE(0xa0, Operand.BRANCH, -2),
+    IF_ICMPLT(0xa1, Operand.BRANCH, -2),
+    IF_ICMPGE(0xa2, Operand.BRANCH, -2),
+    IF_ICMPGT(0xa3, Operand.BRANCH, -2),
+    IF_ICMPLE(0xa4, Operand.BRANCH, -2),
+    GOTO(0xa7, Operand.BRANCH, 0),
+    RETURN(0xb1, Operand.NONE, 0),
+    GETSTATIC(0xb2, Operand.FIELD, 0),
+    PUTSTATIC(0xb3, Operand.FIELD, 0),
+    INVOKEVIRTUAL(0xb6, Operand.METHOD, 0),
+    INVOKESPECIAL(0xb7, Operand.METHOD, 0),
+    INVOKESTATIC(0xb8, Operand.METHOD, 0);
+
+    /**
+     * The operand that follows an opcode in the code attribute
+     */
+    public enum Operand {
+        NONE, BYTE, SHORT, CONSTANT, LOCAL, INCREMENT, BRANCH, FIELD, METHOD
+    }
+
+    private final int code;
+    private final Operand operand;
+    private final int stackChange;
+
+    Opcode(int code, Operand operand, int stackChange) {
+        this.code = code;
+        this.operand = operand;
+        this.stackChange = stackChange;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public Operand getOperand() {
+        return operand;
+    }
+
+    /**
+     * The change of the stack depth in slots, a double takes 2 slots
+     * For field and method instructions it depends on the descriptor, see StackAnalyzer
+     *
+     * @return e.g. -1 for iadd
+     */
+    public int getStackChange() {
+        return stackChange;
+    }
+
+    /**
+     * @return true if the next instruction is never executed after this one
+     */
+    public boolean isUnconditionalJump() {
+        return this == GOTO || this == RETURN;
+    }
+
+    public String getMnemonic() {
+        return name().toLowerCase();
+    }
+}
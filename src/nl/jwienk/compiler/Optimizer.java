@@ -0,0 +1,17 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Program;
+
+/**
+ * Runs the optimization passes over the intermediate representation
+ */
+public class Optimizer {
+
+    public Program optimize(Program program) {
+        program = new ConstantFolder().fold(program);
+        program = new DeadCodeEliminator().eliminate(program);
+        program = new LoopInvariantMover().move(program);
+        program = new StrengthReducer().reduce(program);
+        return program;
+    }
+}
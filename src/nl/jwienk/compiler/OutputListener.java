@@ -0,0 +1,12 @@
+package nl.jwienk.compiler;
+
+/**
+ * Receives the output of an executed program line by line while it is running
+ */
+public interface OutputListener {
+
+    void stdout(String line);
+
+    default void stderr(String line) {
+    }
+}
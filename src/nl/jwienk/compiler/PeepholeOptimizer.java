@@ -0,0 +1,431 @@
+package nl.jwienk.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rewrites short sequences of generated instructions into shorter or cheaper ones
+ * The rules are tried at every instruction until none of them changes anything anymore.
+ * Removed instructions leave a gap in the emitter that is closed at the end,
+ * so labels keep their position while the rules run.
+ */
+public class PeepholeOptimizer {
+
+    private Map<String, PeepholeRule> rules = new LinkedHashMap<>();
+    private Map<String, Integer> counts = new LinkedHashMap<>();
+
+    private Emitter emitter;
+    // the position of every label and the number of jumps to it
+    private int[] labels;
+    private int[] references;
+
+    public PeepholeOptimizer() {
+        addRule("push constant", PeepholeOptimizer::pushConstant);
+        addRule("not", PeepholeOptimizer::not);
+        addRule("increment", PeepholeOptimizer::increment);
+        addRule("load store", PeepholeOptimizer::loadStore);
+        addRule("jump to next", PeepholeOptimizer::jumpToNext);
+        addRule("jump over jump", PeepholeOptimizer::jumpOverJump);
+        addRule("jump to jump", PeepholeOptimizer::jumpToJump);
+        addRule("unreachable code", PeepholeOptimizer::unreachableCode);
+        addRule("unused label", PeepholeOptimizer::unusedLabel);
+    }
+
+    /**
+     * Add a rule after the existing ones, a rule with the same name is replaced
+     */
+    public void addRule(String name, PeepholeRule rule) {
+        rules.put(name, rule);
+        counts.put(name, 0);
+    }
+
+    /**
+     * @return the number of rewrites of every rule in the last run
+     */
+    public Map<String, Integer> getCounts() {
+        return counts;
+    }
+
+    /**
+     * Optimize the instructions and recompute the stack limit
+     *
+     * @param emitter the instructions of the main method as generated by the GeneratorVisitor
+     */
+    public void optimize(Emitter emitter) {
+        this.emitter = emitter;
+        this.labels = new int[emitter.getLabelCount()];
+        this.references = new int[emitter.getLabelCount()];
+        counts.replaceAll((name, count) -> 0);
+
+        for (int i = 0; i < emitter.size(); i++) {
+            if (emitter.isLabel(i)) {
+                labels[emitter.getOperand(i)] = i;
+            } else if (emitter.getOpcode(i).getOperand() == Opcode.Operand.BRANCH) {
+                references[emitter.getOperand(i)]++;
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < emitter.size(); i++) {
+                for (Map.Entry<String, PeepholeRule> rule : rules.entrySet()) {
+                    if (!emitter.isRemoved(i) && rule.getValue().apply(this, i)) {
+                        counts.merge(rule.getKey(), 1, Integer::sum);
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        emitter.compact();
+        emitter.setLimits(emitter.getMaxLocals(), StackAnalyzer.getMaxStack(emitter));
+    }
+
+    public Emitter getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * @return the index of the next instruction or label after an index, or the size at the end
+     */
+    public int next(int index) {
+        index++;
+        while (index < emitter.size() && emitter.isRemoved(index)) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the next instruction after an index, skipping labels
+     */
+    public int nextInstruction(int index) {
+        index = next(index);
+        while (index < emitter.size() && emitter.isLabel(index)) {
+            index = next(index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the opcode at an index, null for a label or the end
+     */
+    public Opcode getOpcode(int index) {
+        return index < emitter.size() ? emitter.getOpcode(index) : null;
+    }
+
+    /**
+     * @return true if the label is placed between an index and the next instruction
+     */
+    public boolean isLabelNext(int index, int label) {
+        for (int i = next(index); i < emitter.size() && emitter.isLabel(i); i = next(i)) {
+            if (emitter.getOperand(i) == label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of jumps to a label
+     */
+    public int getReferences(int label) {
+        return references[label];
+    }
+
+    /**
+     * @return the index of the first instruction after a label
+     */
+    public int getTarget(int label) {
+        return nextInstruction(labels[label]);
+    }
+
+    /**
+     * @return the value an instruction pushes if it is an int constant, otherwise null
+     */
+    public Integer getIntConstant(int index) {
+        Opcode opcode = getOpcode(index);
+        if (opcode == null) {
+            return null;
+        }
+        switch (opcode) {
+            case ICONST_M1:
+            case ICONST_0:
+            case ICONST_1:
+            case ICONST_2:
+            case ICONST_3:
+            case ICONST_4:
+            case ICONST_5:
+                return opcode.ordinal() - Opcode.ICONST_0.ordinal();
+            case BIPUSH:
+            case SIPUSH:
+                return emitter.getOperand(index);
+            case LDC:
+                Object value = emitter.getConstant(index);
+                return value instanceof Integer ? (Integer) value : null;
+            default:
+                return null;
+        }
+    }
+
+    public void replace(int index, Opcode opcode) {
+        replace(index, opcode, 0, 0);
+    }
+
+    /**
+     * Overwrite an instruction, the jump counts of the labels are kept up to date
+     */
+    public void replace(int index, Opcode opcode, int operand, int extra) {
+        unreference(index);
+        emitter.replace(index, opcode, operand, extra);
+        if (opcode.getOperand() == Opcode.Operand.BRANCH) {
+            references[operand]++;
+        }
+    }
+
+    public void remove(int index) {
+        unreference(index);
+        emitter.remove(index);
+    }
+
+    private void unreference(int index) {
+        Opcode opcode = emitter.getOpcode(index);
+        if (opcode != null && opcode.getOperand() == Opcode.Operand.BRANCH) {
+            references[emitter.getOperand(index)]--;
+        }
+    }
+
+    /**
+     * ldc 1 -> iconst_1, ldc 100 -> bipush 100 and ldc 1000 -> sipush 1000
+     */
+    private static boolean pushConstant(PeepholeOptimizer optimizer, int index) {
+        if (optimizer.getOpcode(index) != Opcode.LDC) {
+            return false;
+        }
+        Integer value = optimizer.getIntConstant(index);
+        if (value == null) {
+            return false;
+        }
+
+        if (value >= -1 && value <= 5) {
+            optimizer.replace(index, Opcode.values()[Opcode.ICONST_0.ordinal() + value]);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            optimizer.replace(index, Opcode.BIPUSH, value, 0);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            optimizer.replace(index, Opcode.SIPUSH, value, 0);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * iconst_1 iadd iconst_2 irem -> iconst_1 ixor
+     * a boolean is 0 or 1, so flipping the lowest bit gives the same result
+     */
+    private static boolean not(PeepholeOptimizer optimizer, int index) {
+        int add = optimizer.next(index);
+        int two = optimizer.next(add);
+        int rem = optimizer.next(two);
+        if (optimizer.getOpcode(index) != Opcode.ICONST_1 || optimizer.getOpcode(add) != Opcode.IADD
+                || optimizer.getOpcode(two) != Opcode.ICONST_2 || optimizer.getOpcode(rem) != Opcode.IREM) {
+            return false;
+        }
+
+        optimizer.replace(add, Opcode.IXOR);
+        optimizer.remove(two);
+        optimizer.remove(rem);
+        return true;
+    }
+
+    /**
+     * iload 1 iconst_2 iadd istore 1 -> iinc 1 2, also for isub and with the constant first
+     */
+    private static boolean increment(PeepholeOptimizer optimizer, int index) {
+        int second = optimizer.next(index);
+        int operation = optimizer.next(second);
+        int store = optimizer.next(operation);
+        if (optimizer.getOpcode(store) != Opcode.ISTORE) {
+            return false;
+        }
+        Opcode opcode = optimizer.getOpcode(operation);
+        if (opcode != Opcode.IADD && opcode != Opcode.ISUB) {
+            return false;
+        }
+
+        int local = optimizer.getEmitter().getOperand(store);
+        Integer value;
+        if (optimizer.getOpcode(index) == Opcode.ILOAD && optimizer.getEmitter().getOperand(index) == local) {
+            value = optimizer.getIntConstant(second);
+        } else if (opcode == Opcode.IADD && optimizer.getOpcode(second) == Opcode.ILOAD
+                && optimizer.getEmitter().getOperand(second) == local) {
+            value = optimizer.getIntConstant(index);
+        } else {
+            return false;
+        }
+        if (value == null) {
+            return false;
+        }
+
+        long increment = opcode == Opcode.ISUB ? -(long) value : value;
+        // the wide form of iinc has a 16 bit increment
+        if (increment < Short.MIN_VALUE || increment > Short.MAX_VALUE) {
+            return false;
+        }
+
+        optimizer.replace(index, Opcode.IINC, local, (int) increment);
+        optimizer.remove(second);
+        optimizer.remove(operation);
+        optimizer.remove(store);
+        return true;
+    }
+
+    /**
+     * iload 1 istore 1 -> nothing, the same for doubles
+     */
+    private static boolean loadStore(PeepholeOptimizer optimizer, int index) {
+        Opcode load = optimizer.getOpcode(index);
+        int next = optimizer.next(index);
+        Opcode store = optimizer.getOpcode(next);
+        if (!(load == Opcode.ILOAD && store == Opcode.ISTORE || load == Opcode.DLOAD && store == Opcode.DSTORE)
+                || optimizer.getEmitter().getOperand(index) != optimizer.getEmitter().getOperand(next)) {
+            return false;
+        }
+
+        optimizer.remove(index);
+        optimizer.remove(next);
+        return true;
+    }
+
+    /**
+     * goto l1 l1: -> l1:
+     * a conditional jump still has to take its operands off the stack
+     */
+    private static boolean jumpToNext(PeepholeOptimizer optimizer, int index) {
+        Opcode opcode = optimizer.getOpcode(index);
+        if (opcode == null || opcode.getOperand() != Opcode.Operand.BRANCH
+                || !optimizer.isLabelNext(index, optimizer.getEmitter().getOperand(index))) {
+            return false;
+        }
+
+        if (opcode == Opcode.GOTO) {
+            optimizer.remove(index);
+        } else {
+            optimizer.replace(index, opcode.getStackChange() == -2 ? Opcode.POP2 : Opcode.POP);
+        }
+        return true;
+    }
+
+    /**
+     * ifeq l1 goto l2 l1: -> ifne l2 l1:
+     */
+    private static boolean jumpOverJump(PeepholeOptimizer optimizer, int index) {
+        Opcode opcode = optimizer.getOpcode(index);
+        int next = optimizer.next(index);
+        if (opcode == null || opcode == Opcode.GOTO || opcode.getOperand() != Opcode.Operand.BRANCH
+                || optimizer.getOpcode(next) != Opcode.GOTO
+                || !optimizer.isLabelNext(next, optimizer.getEmitter().getOperand(index))) {
+            return false;
+        }
+
+        optimizer.replace(index, negate(opcode), optimizer.getEmitter().getOperand(next), 0);
+        optimizer.remove(next);
+        return true;
+    }
+
+    /**
+     * goto l1 ... l1: goto l2 -> goto l2 ... l1: goto l2
+     */
+    private static boolean jumpToJump(PeepholeOptimizer optimizer, int index) {
+        Opcode opcode = optimizer.getOpcode(index);
+        if (opcode == null || opcode.getOperand() != Opcode.Operand.BRANCH) {
+            return false;
+        }
+        int label = optimizer.getEmitter().getOperand(index);
+
+        // follow the chain of jumps to where the code continues
+        int destination = label;
+        for (int steps = 0; ; steps++) {
+            int target = optimizer.getTarget(destination);
+            if (optimizer.getOpcode(target) != Opcode.GOTO) {
+                break;
+            }
+            // the jumps go round in circles
+            if (steps == optimizer.getEmitter().getLabelCount()) {
+                return false;
+            }
+            destination = optimizer.getEmitter().getOperand(target);
+        }
+        if (destination == label) {
+            return false;
+        }
+
+        optimizer.replace(index, opcode, destination, 0);
+        return true;
+    }
+
+    /**
+     * Instructions between an unconditional jump and the next label are never executed
+     */
+    private static boolean unreachableCode(PeepholeOptimizer optimizer, int index) {
+        Opcode opcode = optimizer.getOpcode(index);
+        if (opcode == null || !opcode.isUnconditionalJump()) {
+            return false;
+        }
+
+        boolean removed = false;
+        for (int i = optimizer.next(index); optimizer.getOpcode(i) != null; i = optimizer.next(i)) {
+            optimizer.remove(i);
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Labels that are never jumped to
+     */
+    private static boolean unusedLabel(PeepholeOptimizer optimizer, int index) {
+        Emitter emitter = optimizer.getEmitter();
+        if (!emitter.isLabel(index) || optimizer.getReferences(emitter.getOperand(index)) > 0) {
+            return false;
+        }
+
+        optimizer.remove(index);
+        return true;
+    }
+
+    /**
+     * @return the jump that is taken exactly when the given one is not
+     */
+    private static Opcode negate(Opcode opcode) {
+        switch (opcode) {
+            case IFEQ:
+                return Opcode.IFNE;
+            case IFNE:
+                return Opcode.IFEQ;
+            case IFLT:
+                return Opcode.IFGE;
+            case IFGE:
+                return Opcode.IFLT;
+            case IFGT:
+                return Opcode.IFLE;
+            case IFLE:
+                return Opcode.IFGT;
+            case IF_ICMPEQ:
+                return Opcode.IF_ICMPNE;
+            case IF_ICMPNE:
+                return Opcode.IF_ICMPEQ;
+            case IF_ICMPLT:
+                return Opcode.IF_ICMPGE;
+            case IF_ICMPGE:
+                return Opcode.IF_ICMPLT;
+            case IF_ICMPGT:
+                return Opcode.IF_ICMPLE;
+            case IF_ICMPLE:
+                return Opcode.IF_ICMPGT;
+            default:
+                throw new IllegalArgumentException(opcode.getMnemonic());
+        }
+    }
+}
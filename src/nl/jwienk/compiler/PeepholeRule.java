@@ -0,0 +1,18 @@
+package nl.jwienk.compiler;
+
+/**
+ * A rewrite of a short instruction sequence, see PeepholeOptimizer
+ */
+@FunctionalInterface
+public interface PeepholeRule {
+
+    /**
+     * Try to rewrite the instructions that start at an index
+     * Changes have to go through the optimizer so it can keep track of the labels.
+     *
+     * @param optimizer the optimizer that holds the instructions
+     * @param index     the first instruction or label of the sequence
+     * @return true if the instructions were rewritten
+     */
+    boolean apply(PeepholeOptimizer optimizer, int index);
+}
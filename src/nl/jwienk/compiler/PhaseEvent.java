@@ -0,0 +1,31 @@
+package nl.jwienk.compiler;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A phase of a compilation for flight recorder, e.g. parse, see CompileMetrics
+ */
+@Name("nl.jwienk.compiler.Phase")
+@Label("Compiler Phase")
+@Category("Compiler")
+@Description("A phase of compiling a program")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+    @Label("Program")
+    String program;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Allocated")
+    @Description("Bytes allocated by the compiling thread, -1 if unknown")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,16 @@
+package nl.jwienk.compiler;
+
+/**
+ * Loads a single generated program from its class file bytes
+ * A new loader is used for every run so the class can be garbage collected afterwards
+ */
+public class ProgramClassLoader extends ClassLoader {
+
+    public ProgramClassLoader() {
+        super(ProgramClassLoader.class.getClassLoader());
+    }
+
+    public Class<?> define(String name, byte[] bytes) {
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,127 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Parses programs with a single lexer and parser that are reused for every program
+ * The program is parsed with the fast SLL prediction first, which stops at the first syntax error.
+ * Only then it is parsed again with full LL prediction, which reports and recovers from the errors
+ * exactly like a single LL parse. The prediction caches of the generated parser are shared by all
+ * instances, so they warm up once per jvm.
+ * Every node of the tree gets a number while it is parsed, see NumberedContext.
+ * A lexer and parser can not be used by two threads at once, so every thread gets its own, see get.
+ */
+public class ProgramParser {
+
+    private static final ThreadLocal<ProgramParser> PARSERS = ThreadLocal.withInitial(ProgramParser::new);
+
+    private final CompilerLexer lexer = new CompilerLexer(null);
+    private final CompilerParser parser = new CompilerParser(null);
+    private final BailErrorStrategy bail = new BailErrorStrategy();
+    private final DefaultErrorStrategy recover = new DefaultErrorStrategy();
+    private final NodeNumberer numberer = new NodeNumberer();
+
+    private ProgramParser() {
+        parser.addParseListener(numberer);
+    }
+
+    /**
+     * @return the parser of the current thread
+     */
+    public static ProgramParser get() {
+        return PARSERS.get();
+    }
+
+    /**
+     * @return the number of tokens of the last program, the end of the file included
+     */
+    public int getTokenCount() {
+        return parser.getInputStream().size();
+    }
+
+    /**
+     * @return the number of nodes of the last program, its tokens not included
+     */
+    public int getNodeCount() {
+        return numberer.nodes;
+    }
+
+    /**
+     * Parse a program
+     *
+     * @param listener gets the characters the lexer skips and the syntax errors
+     * @return the parse tree of the program
+     */
+    public ParseTree parse(CharStream input, ANTLRErrorListener listener) {
+        lexer.setInputStream(input);
+        // the tokens are lexed during the SLL attempt, so the lexer always reports to the listener
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(listener);
+        // every program numbers its identifiers from 0
+        lexer.setTokenFactory(new IdentifierTokenFactory());
+        return parse(new CommonTokenStream(lexer), listener);
+    }
+
+    /**
+     * Parse the tokens of a program, e.g. tokens that were lexed before
+     *
+     * @param listener gets the syntax errors, there are none if SLL prediction succeeds
+     * @return the parse tree of the program
+     */
+    public ParseTree parse(CommonTokenStream tokens, ANTLRErrorListener listener) {
+        parser.setTokenStream(tokens);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(bail);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        numberer.nodes = 0;
+        try {
+            return parser.program();
+        } catch (ParseCancellationException e) {
+            // a syntax error, or a program SLL can not predict, the tokens are lexed only once
+            tokens.seek(0);
+            parser.reset();
+            numberer.nodes = 0;
+            parser.addErrorListener(listener);
+            parser.setErrorHandler(recover);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.program();
+        }
+    }
+
+    /**
+     * Numbers every context when the parser enters it, a context that replaces another one
+     * for a labeled alternative takes over its number
+     */
+    private static class NodeNumberer implements ParseTreeListener {
+
+        private int nodes = 0;
+
+        @Override
+        public void enterEveryRule(ParserRuleContext ctx) {
+            ((NumberedContext) ctx).setNode(nodes++);
+        }
+
+        @Override
+        public void exitEveryRule(ParserRuleContext ctx) {
+        }
+
+        @Override
+        public void visitTerminal(TerminalNode node) {
+        }
+
+        @Override
+        public void visitErrorNode(ErrorNode node) {
+        }
+    }
+}
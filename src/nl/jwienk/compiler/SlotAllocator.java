@@ -0,0 +1,55 @@
+package nl.jwienk.compiler;
+
+import java.util.BitSet;
+
+/**
+ * Hands out the locals of the main method
+ * Slots are given back when the scope of a variable closes, so variables in
+ * sibling blocks and successive loops share them. An int or boolean needs 1 slot,
+ * a double 2 adjacent slots.
+ */
+public class SlotAllocator {
+
+    private BitSet used;
+    private int maxLocals;
+
+    /**
+     * @param reserved the slots that are always in use e.g. 1 for the main argument
+     */
+    public SlotAllocator(int reserved) {
+        this.used = new BitSet();
+        this.used.set(0, reserved);
+        this.maxLocals = reserved;
+    }
+
+    /**
+     * @return the lowest free slot that fits the type
+     */
+    public int allocate(Type type) {
+        int width = getWidth(type);
+        int slot = used.nextClearBit(0);
+
+        while (used.nextSetBit(slot) >= 0 && used.nextSetBit(slot) < slot + width) {
+            slot = used.nextClearBit(used.nextSetBit(slot));
+        }
+
+        used.set(slot, slot + width);
+        maxLocals = Math.max(maxLocals, slot + width);
+        return slot;
+    }
+
+    public void release(int slot, Type type) {
+        used.clear(slot, slot + getWidth(type));
+    }
+
+    /**
+     * @return the value for .limit locals
+     */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    private static int getWidth(Type type) {
+        return type == Type.DOUBLE ? 2 : 1;
+    }
+}
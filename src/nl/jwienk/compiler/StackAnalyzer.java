@@ -0,0 +1,141 @@
+package nl.jwienk.compiler;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Computes the exact maximum stack depth of the emitted instructions
+ * The depth is propagated along every control flow edge, fall through and jumps,
+ * until every reachable instruction has a known depth on entry.
+ */
+public class StackAnalyzer {
+
+    private static final int UNKNOWN = -1;
+
+    /**
+     * @param emitter the instructions of the main method
+     * @return the value for .limit stack
+     */
+    public static int getMaxStack(Emitter emitter) {
+        int size = emitter.size();
+
+        // the instruction index of every label
+        int[] labels = new int[emitter.getLabelCount()];
+        for (int i = 0; i < size; i++) {
+            if (emitter.isLabel(i)) {
+                labels[emitter.getOperand(i)] = i;
+            }
+        }
+
+        int[] depths = new int[size];
+        Arrays.fill(depths, UNKNOWN);
+        Deque<Integer> worklist = new ArrayDeque<>();
+        int max = 0;
+
+        if (size > 0) {
+            depths[0] = 0;
+            worklist.push(0);
+        }
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.pop();
+            int depth = depths[index];
+
+            // follow the instructions until the block ends
+            while (true) {
+                Opcode opcode = emitter.getOpcode(index);
+                if (opcode != null) {
+                    depth += getStackChange(emitter, index);
+                    if (depth < 0) {
+                        throw new CompilerException("Stack underflow at " + opcode.getMnemonic());
+                    }
+                    max = Math.max(max, depth);
+
+                    if (opcode.getOperand() == Opcode.Operand.BRANCH) {
+                        int target = labels[emitter.getOperand(index)];
+                        if (merge(depths, target, depth)) {
+                            worklist.push(target);
+                        }
+                    }
+
+                    if (opcode.isUnconditionalJump()) break;
+                }
+
+                index++;
+                if (index == size || !merge(depths, index, depth)) break;
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * @return true if the instruction was not visited yet
+     */
+    private static boolean merge(int[] depths, int index, int depth) {
+        if (depths[index] == UNKNOWN) {
+            depths[index] = depth;
+            return true;
+        }
+        if (depths[index] != depth) {
+            throw new CompilerException("Inconsistent stack depth at instruction " + index);
+        }
+        return false;
+    }
+
+    /**
+     * The stack change of field and method instructions follows from their descriptor
+     */
+    private static int getStackChange(Emitter emitter, int index) {
+        Opcode opcode = emitter.getOpcode(index);
+
+        switch (opcode) {
+            case GETSTATIC:
+                return getSize(((Emitter.Member) emitter.getConstant(index)).getDescriptor());
+            case PUTSTATIC:
+                return -getSize(((Emitter.Member) emitter.getConstant(index)).getDescriptor());
+            case INVOKEVIRTUAL:
+            case INVOKESPECIAL:
+            case INVOKESTATIC:
+                String descriptor = ((Emitter.Member) emitter.getConstant(index)).getDescriptor();
+                int close = descriptor.indexOf(')');
+                int change = getSize(descriptor.substring(close + 1)) - getArgumentsSize(descriptor.substring(1, close));
+                // the object the method is called on
+                return opcode == Opcode.INVOKESTATIC ? change : change - 1;
+            default:
+                return opcode.getStackChange();
+        }
+    }
+
+    /**
+     * @param descriptor e.g. D or Ljava/io/PrintStream;
+     * @return the number of stack slots of a value of this type
+     */
+    private static int getSize(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'V':
+                return 0;
+            case 'D':
+            case 'J':
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int getArgumentsSize(String arguments) {
+        int size = 0;
+        int i = 0;
+        while (i < arguments.length()) {
+            char c = arguments.charAt(i);
+            size += c == 'D' || c == 'J' ? 2 : 1;
+
+            // skip to the end of this argument
+            while (arguments.charAt(i) == '[') i++;
+            if (arguments.charAt(i) == 'L') i = arguments.indexOf(';', i);
+            i++;
+        }
+        return size;
+    }
+}
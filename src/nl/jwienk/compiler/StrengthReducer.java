@@ -0,0 +1,302 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.Binary;
+import nl.jwienk.compiler.ir.Block;
+import nl.jwienk.compiler.ir.Constant;
+import nl.jwienk.compiler.ir.Convert;
+import nl.jwienk.compiler.ir.Expression;
+import nl.jwienk.compiler.ir.For;
+import nl.jwienk.compiler.ir.IrRewriter;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+import nl.jwienk.compiler.ir.Operator;
+import nl.jwienk.compiler.ir.Program;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces expensive calculations by cheaper ones
+ * In a for loop that counts a variable up or down by a constant, i * 8, (double) i and
+ * (double) i * 2.5 get their own variable that is increased together with the counter,
+ * e.g. for (var i = 0; i < 10; i = i + 1) { print(i * 8); } becomes
+ * { var i = 0; var t = i * 8; for (; i < 10; i = i + 1) { print(t); t = t + 8; } }
+ * Ints give the same results because they wrap the same way, doubles are only
+ * increased when every value is exact and the counter can not overflow.
+ * Afterwards int multiplications and divisions by a power of two become shifts.
+ */
+public class StrengthReducer extends IrRewriter {
+
+    // 2^53, doubles represent every integer up to here
+    private static final long EXACT_LIMIT = 1L << 53;
+
+    private int tempCount = 0;
+
+    public Program reduce(Program program) {
+        program = (Program) rewrite(program);
+        return (Program) new PowerOfTwoReducer().rewrite(program);
+    }
+
+    @Override
+    public Node visitFor(For forStatement) {
+        For loop = (For) super.visitFor(forStatement);
+
+        Assign initializer = loop.getInitializer();
+        Assign update = loop.getUpdate();
+        if (initializer == null || update == null || initializer.getSymbol() != update.getSymbol()
+                || update.getSymbol().getType() != Type.INT) {
+            return loop;
+        }
+
+        Symbol counter = update.getSymbol();
+        Integer step = getStep(update);
+        // the counter may only change in the update
+        if (step == null || step == 0 || UsageCounter.count(loop.getBody()).getStores(counter) > 0) {
+            return loop;
+        }
+
+        Deriver deriver = new Deriver(counter, step, getStart(initializer), getBound(loop, step));
+        Expression condition = deriver.rewrite(loop.getCondition());
+        Node body = deriver.rewrite(loop.getBody());
+        if (deriver.temps.isEmpty()) {
+            return loop;
+        }
+
+        // the derived variables are increased after the body, there is no continue that could skip it
+        List<Node> bodyStatements = new ArrayList<>();
+        bodyStatements.add(body);
+        List<Node> statements = new ArrayList<>();
+        statements.add(initializer);
+        for (int i = 0; i < deriver.temps.size(); i++) {
+            Symbol temp = deriver.temps.get(i);
+            statements.add(new Assign(temp, deriver.values.get(i), true));
+            bodyStatements.add(new Assign(temp, new Binary(Operator.ADD, new Load(temp), deriver.steps.get(i)), false));
+        }
+        statements.add(new For(null, condition, update, new Block(bodyStatements, new ArrayList<>()), new ArrayList<>()));
+
+        // the counter keeps its scope, together with the derived variables
+        List<Symbol> symbols = new ArrayList<>(loop.getSymbols());
+        symbols.addAll(deriver.temps);
+        return new Block(statements, symbols);
+    }
+
+    /**
+     * @return c for i = i + c, c + i or i - c, otherwise null
+     */
+    private static Integer getStep(Assign update) {
+        if (!(update.getValue() instanceof Binary)) {
+            return null;
+        }
+        Binary value = (Binary) update.getValue();
+        Symbol counter = update.getSymbol();
+
+        if (value.getOperator() == Operator.ADD) {
+            if (isLoad(value.getLeft(), counter) && value.getRight() instanceof Constant) {
+                return (Integer) ((Constant) value.getRight()).getValue();
+            }
+            if (isLoad(value.getRight(), counter) && value.getLeft() instanceof Constant) {
+                return (Integer) ((Constant) value.getLeft()).getValue();
+            }
+        } else if (value.getOperator() == Operator.SUB) {
+            if (isLoad(value.getLeft(), counter) && value.getRight() instanceof Constant) {
+                return -(Integer) ((Constant) value.getRight()).getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the first value of the counter if it is a constant, otherwise null
+     */
+    private static Integer getStart(Assign initializer) {
+        Expression value = initializer.getValue();
+        return value instanceof Constant ? (Integer) ((Constant) value).getValue() : null;
+    }
+
+    /**
+     * The largest absolute value the counter gets, only known for e.g. i < 10 with a constant start
+     * and a step towards the bound that can not overflow past it
+     *
+     * @return the bound or -1 if it is unknown
+     */
+    private static long getBound(For loop, int step) {
+        Integer start = getStart(loop.getInitializer());
+        if (start == null || !(loop.getCondition() instanceof Binary)) {
+            return -1;
+        }
+        Binary condition = (Binary) loop.getCondition();
+        if (!isLoad(condition.getLeft(), loop.getUpdate().getSymbol()) || !(condition.getRight() instanceof Constant)) {
+            return -1;
+        }
+        long limit = (Integer) ((Constant) condition.getRight()).getValue();
+
+        // the last value is the first one past the limit
+        long last;
+        if (step > 0 && condition.getOperator() == Operator.LT) {
+            last = limit - 1 + step;
+        } else if (step > 0 && condition.getOperator() == Operator.LE) {
+            last = limit + step;
+        } else if (step < 0 && condition.getOperator() == Operator.GT) {
+            last = limit + 1 + step;
+        } else if (step < 0 && condition.getOperator() == Operator.GE) {
+            last = limit + step;
+        } else {
+            return -1;
+        }
+        if (last > Integer.MAX_VALUE || last < Integer.MIN_VALUE) {
+            return -1;
+        }
+        return Math.max(Math.max(Math.abs((long) start), Math.abs(last)), Math.abs((long) step));
+    }
+
+    private static boolean isLoad(Expression expression, Symbol symbol) {
+        return expression instanceof Load && ((Load) expression).getSymbol() == symbol;
+    }
+
+    /**
+     * @return true if counter * factor is exact for every counter up to the bound
+     */
+    private static boolean isExactProduct(double factor, long bound) {
+        if (factor == 0 || Double.isNaN(factor) || Double.isInfinite(factor) || bound < 0) {
+            return false;
+        }
+        // factor is an odd integer times a power of two, the product is exact if that integer times the bound is
+        long bits = Double.doubleToRawLongBits(factor);
+        long significand = bits & 0xFFFFFFFFFFFFFL;
+        if (Math.getExponent(factor) >= Double.MIN_EXPONENT) {
+            significand |= 1L << 52;
+        }
+        significand >>= Long.numberOfTrailingZeros(significand);
+
+        return bound == 0 || significand < EXACT_LIMIT / bound && Math.abs(factor) < Double.MAX_VALUE / bound;
+    }
+
+    /**
+     * Replaces the calculations with the counter of a single loop by derived variables
+     */
+    private class Deriver extends IrRewriter {
+
+        private final Symbol counter;
+        private final int step;
+        private final Integer start;
+        private final long bound;
+
+        private final List<Symbol> temps = new ArrayList<>();
+        private final List<Expression> values = new ArrayList<>();
+        private final List<Constant> steps = new ArrayList<>();
+
+        Deriver(Symbol counter, int step, Integer start, long bound) {
+            this.counter = counter;
+            this.step = step;
+            this.start = start;
+            this.bound = bound;
+        }
+
+        @Override
+        public Node visitBinary(Binary binary) {
+            if (binary.getOperator() != Operator.MUL) {
+                return super.visitBinary(binary);
+            }
+            boolean constantLeft = binary.getLeft() instanceof Constant;
+            Expression variable = constantLeft ? binary.getRight() : binary.getLeft();
+            Expression factor = constantLeft ? binary.getLeft() : binary.getRight();
+            if (!(factor instanceof Constant)) {
+                return super.visitBinary(binary);
+            }
+
+            // i * 8, ints wrap the same way when they are added up
+            if (binary.getType() == Type.INT && isLoad(variable, counter)) {
+                int value = (Integer) ((Constant) factor).getValue();
+                return derive(binary, new Constant(Type.INT, step * value));
+            }
+
+            // (double) i * 2.5
+            if (binary.getType() == Type.DOUBLE && variable instanceof Convert
+                    && isLoad(((Convert) variable).getValue(), counter)) {
+                double value = (Double) ((Constant) factor).getValue();
+                // the product of 0 and a negative factor is -0.0, adding up to 0 gives 0.0
+                if (isExactProduct(value, bound) && !(value < 0 && (step > 0 ? start < 0 : start > 0))) {
+                    return derive(binary, new Constant(Type.DOUBLE, step * value));
+                }
+            }
+            return super.visitBinary(binary);
+        }
+
+        @Override
+        public Node visitConvert(Convert convert) {
+            // (double) i, exact as long as the counter does not overflow
+            if (isLoad(convert.getValue(), counter) && bound >= 0) {
+                return derive(convert, new Constant(Type.DOUBLE, (double) step));
+            }
+            return super.visitConvert(convert);
+        }
+
+        private Load derive(Expression expression, Constant increment) {
+            for (int i = 0; i < values.size(); i++) {
+                if (LoopInvariantMover.isSame(values.get(i), expression)) {
+                    return new Load(temps.get(i));
+                }
+            }
+
+            Symbol temp = new Symbol(null, "$induction_" + ++tempCount, expression.getType());
+            temps.add(temp);
+            values.add(expression);
+            steps.add(increment);
+            return new Load(temp);
+        }
+    }
+
+    /**
+     * a * 8 becomes a << 3 and a / 8 becomes (a + (a >> 31 >>> 29)) >> 3,
+     * the correction rounds a negative a towards zero like idiv
+     */
+    private static class PowerOfTwoReducer extends IrRewriter {
+
+        @Override
+        public Node visitBinary(Binary binary) {
+            Binary rewritten = (Binary) super.visitBinary(binary);
+            if (rewritten.getType() != Type.INT) {
+                return rewritten;
+            }
+            Expression left = rewritten.getLeft();
+            Expression right = rewritten.getRight();
+
+            if (rewritten.getOperator() == Operator.MUL) {
+                int shift = getShift(right);
+                if (shift > 0) {
+                    return new Binary(Operator.SHL, left, shiftConstant(shift));
+                }
+                shift = getShift(left);
+                if (shift > 0) {
+                    return new Binary(Operator.SHL, right, shiftConstant(shift));
+                }
+            } else if (rewritten.getOperator() == Operator.DIV && left instanceof Load) {
+                // the dividend is used twice, only a variable can be loaded again for free
+                int shift = getShift(right);
+                if (shift > 0) {
+                    Expression sign = shift == 1
+                            ? new Binary(Operator.USHR, left, shiftConstant(31))
+                            : new Binary(Operator.USHR, new Binary(Operator.SHR, left, shiftConstant(31)), shiftConstant(32 - shift));
+                    return new Binary(Operator.SHR, new Binary(Operator.ADD, left, sign), shiftConstant(shift));
+                }
+            }
+            return rewritten;
+        }
+
+        /**
+         * @return n if the expression is the constant 2^n, 0 otherwise
+         */
+        private static int getShift(Expression expression) {
+            if (!(expression instanceof Constant)) {
+                return 0;
+            }
+            int value = (Integer) ((Constant) expression).getValue();
+            return value > 1 && Integer.bitCount(value) == 1 ? Integer.numberOfTrailingZeros(value) : 0;
+        }
+
+        private static Constant shiftConstant(int shift) {
+            return new Constant(Type.INT, shift);
+        }
+    }
+}
@@ -1,71 +1,122 @@
 package nl.jwienk.compiler;
 
 
-import java.util.*;
-
+import org.antlr.v4.runtime.Token;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The visible symbol of every identifier while the scopes of a program are visited
+ * Identifiers are looked up by the number the IdentifierTokenFactory gave their name, so a lookup is
+ * an array index instead of hashing the name. Every entered symbol is an entry that points to the
+ * entry it shadows, and a scope is the number of entries when it was opened. Closing a scope rolls
+ * the entries back to that mark, so it only touches the symbols of that scope.
+ */
 public class SymbolTable {
 
-    private Map<String, Stack<Symbol>> symbolTable;
-    private Stack<List<String>> scopeStack;
+    private static final int NONE = -1;
+
+    // the entry that is visible for every identifier number, NONE if there is none
+    private int[] visible = new int[16];
+    // per entry: the symbol, the identifier number and the entry it shadows
+    private Symbol[] symbols = new Symbol[16];
+    private int[] entryIds = new int[16];
+    private int[] shadowed = new int[16];
+    private int entries = 0;
+
+    // per open scope the number of entries when it was opened
+    private int[] scopes = new int[8];
+    private int level = 0;
+
+    // numbers for the names of tokens that were not lexed with an IdentifierTokenFactory
+    private Map<String, Integer> ids;
 
     public SymbolTable() {
-        symbolTable = new HashMap<>();
-        scopeStack = new Stack<>();
+        Arrays.fill(visible, NONE);
     }
 
     /**
      * Open a new scope
      */
     public void openScope() {
-        scopeStack.push(new ArrayList<>());
+        if (level == scopes.length) {
+            scopes = Arrays.copyOf(scopes, level * 2);
+        }
+        scopes[level++] = entries;
     }
 
     /**
      * Close the last scope on the stack
      */
     public void closeScope() {
-        List<String> topList = scopeStack.pop();
-
-        for (String name : topList) {
-            symbolTable.get(name).pop();
+        int mark = scopes[--level];
+        while (entries > mark) {
+            entries--;
+            visible[entryIds[entries]] = shadowed[entries];
+            symbols[entries] = null;
         }
-
     }
 
     /**
      * Enter a value into the current scope
      *
-     * @param name   valueName
-     * @param symbol valueSymbol
+     * @param identifier the token of the name
+     * @param symbol     valueSymbol
      */
-    public void enter(String name, Symbol symbol) {
-        scopeStack.peek().add(name);
-
-        if (symbolTable.get(name) == null) {
-            symbolTable.put(name, new Stack<>());
+    public void enter(Token identifier, Symbol symbol) {
+        int id = getId(identifier);
+        if (id >= visible.length) {
+            int length = visible.length;
+            visible = Arrays.copyOf(visible, Math.max(length * 2, id + 1));
+            Arrays.fill(visible, length, visible.length, NONE);
         }
+        if (entries == symbols.length) {
+            symbols = Arrays.copyOf(symbols, entries * 2);
+            entryIds = Arrays.copyOf(entryIds, entries * 2);
+            shadowed = Arrays.copyOf(shadowed, entries * 2);
+        }
+
+        symbols[entries] = symbol;
+        entryIds[entries] = id;
+        shadowed[entries] = visible[id];
+        visible[id] = entries;
+        entries++;
+    }
 
-        symbolTable.get(name).push(symbol);
+    /**
+     * Replace the visible symbol of a name, it stays in the scope it was entered in
+     * e.g. when a variable gets a value of another type
+     *
+     * @param identifier the token of the name
+     * @param symbol     valueSymbol
+     */
+    public void replace(Token identifier, Symbol symbol) {
+        symbols[visible[getId(identifier)]] = symbol;
     }
 
     /**
      * Retrieve the first symbol based on the name
      *
-     * @param name name of the variable
+     * @param identifier the token of the name
      * @return Symbol
      */
-    public Symbol retrieve(String name) {
-
-        if (symbolTable.get(name) != null && !symbolTable.get(name).empty()) {
-            return symbolTable.get(name).peek();
+    public Symbol retrieve(Token identifier) {
+        int id = getId(identifier);
+        if (id >= visible.length || visible[id] == NONE) {
+            return null;
         }
-
-        return null;
+        return symbols[visible[id]];
     }
 
-    public int currentLevel() {
-        return scopeStack.size();
+    private int getId(Token identifier) {
+        if (identifier instanceof IdentifierToken) {
+            return ((IdentifierToken) identifier).getId();
+        }
+        if (ids == null) {
+            ids = new HashMap<>();
+        }
+        return ids.computeIfAbsent(identifier.getText(), name -> ids.size());
     }
-
-
 }
@@ -0,0 +1,55 @@
+package nl.jwienk.compiler;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+import java.util.Arrays;
+
+/**
+ * The type of every node of the parse tree, indexed by the number of the node
+ * A type is one byte, its ordinal + 1, where 0 means the node has no type. This replaces a
+ * ParseTreeProperty, which is an IdentityHashMap that takes more memory than the tree itself.
+ */
+public class TypeAnnotations {
+
+    private static final Type[] TYPES = Type.values();
+
+    private byte[] types;
+
+    public TypeAnnotations() {
+        this(64);
+    }
+
+    /**
+     * @param nodes the number of nodes in the tree, see ProgramParser.getNodeCount
+     */
+    public TypeAnnotations(int nodes) {
+        this.types = new byte[Math.max(nodes, 1)];
+    }
+
+    public void put(ParserRuleContext ctx, Type type) {
+        int node = getNode(ctx);
+        if (node >= types.length) {
+            types = Arrays.copyOf(types, Math.max(types.length * 2, node + 1));
+        }
+        types[node] = (byte) (type.ordinal() + 1);
+    }
+
+    /**
+     * @return the type of the node, null if it has none
+     */
+    public Type get(ParserRuleContext ctx) {
+        int node = getNode(ctx);
+        if (node >= types.length || types[node] == 0) {
+            return null;
+        }
+        return TYPES[types[node] - 1];
+    }
+
+    private static int getNode(ParserRuleContext ctx) {
+        int node = ((NumberedContext) ctx).getNode();
+        if (node == NumberedContext.NONE) {
+            throw new IllegalArgumentException("the node is not numbered, parse the program with the ProgramParser");
+        }
+        return node;
+    }
+}
@@ -1,18 +1,25 @@
 package nl.jwienk.compiler;
 
-import org.antlr.v4.runtime.tree.ParseTreeProperty;
+import org.antlr.v4.runtime.Token;
 
 public class TypeVisitor extends CompilerBaseVisitor<Type> {
 
-    private ParseTreeProperty<Type> types;
+    private TypeAnnotations types;
     private SymbolTable symbolTable;
 
     public TypeVisitor() {
-        this.types = new ParseTreeProperty<>();
+        this(new TypeAnnotations());
+    }
+
+    /**
+     * @param types where the type of every node goes, e.g. sized for the nodes of the tree
+     */
+    public TypeVisitor(TypeAnnotations types) {
+        this.types = types;
         this.symbolTable = new SymbolTable();
     }
 
-    public ParseTreeProperty<Type> getTypes() {
+    public TypeAnnotations getTypes() {
         return types;
     }
 
@@ -42,10 +49,10 @@ public class TypeVisitor extends CompilerBaseVisitor<Type> {
     public Type visitVariableStatement(CompilerParser.VariableStatementContext ctx) {
         //System.out.println("# VISITING VariableStatement");
         Type type = visit(ctx.assignmentStatement().expression());
-        String identifier = ctx.assignmentStatement().IDENTIFIER().getText();
+        Token identifier = ctx.assignmentStatement().IDENTIFIER().getSymbol();
 
         // a variable is being assigned so we have to save the type of this value for when it gets referenced
-        symbolTable.enter(identifier, new Symbol(ctx, identifier, type));
+        symbolTable.enter(identifier, new Symbol(ctx, identifier.getText(), type));
         types.put(ctx, type);
         return type;
     }
@@ -55,7 +62,7 @@ public class TypeVisitor extends CompilerBaseVisitor<Type> {
 
         Type type = visit(ctx.expression());
 
-        if (symbolTable.retrieve(ctx.IDENTIFIER().getText()) == null) {
+        if (symbolTable.retrieve(ctx.IDENTIFIER().getSymbol()) == null) {
             throw new CompilerException(ctx, ctx.IDENTIFIER().getText() + " is not defined");
         }
 
@@ -269,7 +276,7 @@ public class TypeVisitor extends CompilerBaseVisitor<Type> {
     public Type visitVariableConstExpression(CompilerParser.VariableConstExpressionContext ctx) {
         //System.out.println("# VISITING VariableConstExpression");
 
-        Symbol symbol = symbolTable.retrieve(ctx.getText());
+        Symbol symbol = symbolTable.retrieve(ctx.IDENTIFIER().getSymbol());
 
         if (symbol != null) {
             // this symbol was already defined so we can get the type
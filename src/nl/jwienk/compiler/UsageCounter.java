@@ -0,0 +1,52 @@
+package nl.jwienk.compiler;
+
+import nl.jwienk.compiler.ir.Assign;
+import nl.jwienk.compiler.ir.IrRewriter;
+import nl.jwienk.compiler.ir.Load;
+import nl.jwienk.compiler.ir.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Counts how often every variable is stored and loaded in a tree
+ */
+public class UsageCounter extends IrRewriter {
+
+    private Map<Symbol, Integer> stores = new HashMap<>();
+    private Map<Symbol, Integer> loads = new HashMap<>();
+
+    public static UsageCounter count(Node node) {
+        UsageCounter counter = new UsageCounter();
+        counter.rewrite(node);
+        return counter;
+    }
+
+    public int getStores(Symbol symbol) {
+        return stores.getOrDefault(symbol, 0);
+    }
+
+    public int getLoads(Symbol symbol) {
+        return loads.getOrDefault(symbol, 0);
+    }
+
+    /**
+     * @return the variables that are loaded at least once
+     */
+    public Set<Symbol> getLoadedSymbols() {
+        return loads.keySet();
+    }
+
+    @Override
+    public Node visitAssign(Assign assign) {
+        stores.merge(assign.getSymbol(), 1, Integer::sum);
+        return super.visitAssign(assign);
+    }
+
+    @Override
+    public Node visitLoad(Load load) {
+        loads.merge(load.getSymbol(), 1, Integer::sum);
+        return load;
+    }
+}
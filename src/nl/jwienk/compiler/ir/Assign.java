@@ -0,0 +1,38 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Symbol;
+
+/**
+ * Store a value in a variable
+ * A declaration is the first store to a symbol and claims its local
+ * e.g. var a = 1 + 1; or a = 2;
+ */
+public class Assign extends Node {
+
+    private final Symbol symbol;
+    private final Expression value;
+    private final boolean declaration;
+
+    public Assign(Symbol symbol, Expression value, boolean declaration) {
+        this.symbol = symbol;
+        this.value = value;
+        this.declaration = declaration;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    public Expression getValue() {
+        return value;
+    }
+
+    public boolean isDeclaration() {
+        return declaration;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitAssign(this);
+    }
+}
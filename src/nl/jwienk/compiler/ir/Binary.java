@@ -0,0 +1,45 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Type;
+
+/**
+ * e.g 1 + 1, a < b or a && b
+ * Both operands always have the same type
+ */
+public class Binary extends Expression {
+
+    private final Operator operator;
+    private final Expression left;
+    private final Expression right;
+
+    public Binary(Operator operator, Expression left, Expression right) {
+        super(operator.isArithmetic() ? left.getType() : Type.BOOLEAN);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Expression getLeft() {
+        return left;
+    }
+
+    public Expression getRight() {
+        return right;
+    }
+
+    /**
+     * @return the type both operands have
+     */
+    public Type getOperandType() {
+        return left.getType();
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitBinary(this);
+    }
+}
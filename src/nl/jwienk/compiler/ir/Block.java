@@ -0,0 +1,40 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Symbol;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of statements with its own scope
+ * e.g { someCode }
+ */
+public class Block extends Node {
+
+    private final List<Node> statements;
+    private final List<Symbol> symbols;
+
+    /**
+     * @param symbols the variables that live until the end of this scope
+     */
+    public Block(List<Node> statements, List<Symbol> symbols) {
+        this.statements = Collections.unmodifiableList(statements);
+        this.symbols = Collections.unmodifiableList(symbols);
+    }
+
+    public List<Node> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the variables that live until the end of this scope
+     */
+    public List<Symbol> getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitBlock(this);
+    }
+}
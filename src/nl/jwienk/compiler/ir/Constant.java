@@ -0,0 +1,26 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Type;
+
+/**
+ * A literal value, an Integer, Double or Boolean depending on the type
+ * e.g. 1, 1.1 or true
+ */
+public class Constant extends Expression {
+
+    private final Object value;
+
+    public Constant(Type type, Object value) {
+        super(type);
+        this.value = value;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitConstant(this);
+    }
+}
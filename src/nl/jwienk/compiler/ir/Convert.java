@@ -0,0 +1,26 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Type;
+
+/**
+ * Widen a value to another type
+ * The LoweringVisitor adds these wherever an int meets a double
+ */
+public class Convert extends Expression {
+
+    private final Expression value;
+
+    public Convert(Expression value, Type type) {
+        super(type);
+        this.value = value;
+    }
+
+    public Expression getValue() {
+        return value;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitConvert(this);
+    }
+}
@@ -0,0 +1,19 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Type;
+
+/**
+ * A node that leaves a value of a resolved type on the stack
+ */
+public abstract class Expression extends Node {
+
+    private final Type type;
+
+    protected Expression(Type type) {
+        this.type = type;
+    }
+
+    public Type getType() {
+        return type;
+    }
+}
@@ -0,0 +1,60 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Symbol;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * e.g for (var a = 1; a < 10; a = a + 1) { someCode }
+ * The variable of the initializer is scoped to the loop
+ */
+public class For extends Node {
+
+    private final Assign initializer;
+    private final Expression condition;
+    private final Assign update;
+    private final Node body;
+    private final List<Symbol> symbols;
+
+    /**
+     * @param initializer the first assignment, null if the optimizer removed it
+     * @param update      the assignment after every iteration, null if the optimizer removed it
+     * @param symbols     the variables that live until the end of the loop
+     */
+    public For(Assign initializer, Expression condition, Assign update, Node body, List<Symbol> symbols) {
+        this.initializer = initializer;
+        this.condition = condition;
+        this.update = update;
+        this.body = body;
+        this.symbols = Collections.unmodifiableList(symbols);
+    }
+
+    public Assign getInitializer() {
+        return initializer;
+    }
+
+    public Expression getCondition() {
+        return condition;
+    }
+
+    public Assign getUpdate() {
+        return update;
+    }
+
+    public Node getBody() {
+        return body;
+    }
+
+    /**
+     * @return the variables that live until the end of the loop
+     */
+    public List<Symbol> getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitFor(this);
+    }
+}
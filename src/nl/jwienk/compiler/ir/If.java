@@ -0,0 +1,37 @@
+package nl.jwienk.compiler.ir;
+
+/**
+ * e.g if (a == 1) { someCode } else { otherCode }
+ */
+public class If extends Node {
+
+    private final Expression condition;
+    private final Node then;
+    private final Node otherwise;
+
+    /**
+     * @param otherwise the else statement, null if there is none
+     */
+    public If(Expression condition, Node then, Node otherwise) {
+        this.condition = condition;
+        this.then = then;
+        this.otherwise = otherwise;
+    }
+
+    public Expression getCondition() {
+        return condition;
+    }
+
+    public Node getThen() {
+        return then;
+    }
+
+    public Node getOtherwise() {
+        return otherwise;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitIf(this);
+    }
+}
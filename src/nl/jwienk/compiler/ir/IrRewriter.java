@@ -0,0 +1,130 @@
+package nl.jwienk.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Base class for passes that transform the tree
+ * Every visit returns the replacement of the node, by default a copy with rewritten children.
+ * A node is only copied when one of its children changed.
+ */
+public class IrRewriter implements IrVisitor<Node> {
+
+    public Node rewrite(Node node) {
+        return node == null ? null : node.accept(this);
+    }
+
+    public Expression rewrite(Expression expression) {
+        return (Expression) expression.accept(this);
+    }
+
+    protected List<Node> rewriteStatements(List<Node> statements) {
+        List<Node> rewritten = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (Node statement : statements) {
+            Node node = rewrite(statement);
+            changed |= node != statement;
+            // a statement can be removed by returning null
+            if (node != null) rewritten.add(node);
+        }
+        return changed ? rewritten : statements;
+    }
+
+    @Override
+    public Node visitProgram(Program program) {
+        List<Node> statements = rewriteStatements(program.getStatements());
+        return statements == program.getStatements() ? program : new Program(statements, program.getSymbols());
+    }
+
+    @Override
+    public Node visitBlock(Block block) {
+        List<Node> statements = rewriteStatements(block.getStatements());
+        return statements == block.getStatements() ? block : new Block(statements, block.getSymbols());
+    }
+
+    @Override
+    public Node visitAssign(Assign assign) {
+        Expression value = rewrite(assign.getValue());
+        return value == assign.getValue() ? assign : new Assign(assign.getSymbol(), value, assign.isDeclaration());
+    }
+
+    @Override
+    public Node visitPrint(Print print) {
+        Expression value = rewrite(print.getValue());
+        return value == print.getValue() ? print : new Print(value);
+    }
+
+    @Override
+    public Node visitIf(If ifStatement) {
+        Expression condition = rewrite(ifStatement.getCondition());
+        Node then = rewrite(ifStatement.getThen());
+        Node otherwise = rewrite(ifStatement.getOtherwise());
+
+        if (condition == ifStatement.getCondition() && then == ifStatement.getThen() && otherwise == ifStatement.getOtherwise()) {
+            return ifStatement;
+        }
+        return new If(condition, then == null ? emptyBlock() : then, otherwise);
+    }
+
+    @Override
+    public Node visitWhile(While whileStatement) {
+        Expression condition = rewrite(whileStatement.getCondition());
+        Node body = rewrite(whileStatement.getBody());
+
+        if (condition == whileStatement.getCondition() && body == whileStatement.getBody()) {
+            return whileStatement;
+        }
+        return new While(condition, body == null ? emptyBlock() : body);
+    }
+
+    @Override
+    public Node visitFor(For forStatement) {
+        Assign initializer = (Assign) rewrite(forStatement.getInitializer());
+        Expression condition = rewrite(forStatement.getCondition());
+        Node body = rewrite(forStatement.getBody());
+        Assign update = (Assign) rewrite(forStatement.getUpdate());
+
+        if (initializer == forStatement.getInitializer() && condition == forStatement.getCondition()
+                && body == forStatement.getBody() && update == forStatement.getUpdate()) {
+            return forStatement;
+        }
+        return new For(initializer, condition, update, body == null ? emptyBlock() : body, forStatement.getSymbols());
+    }
+
+    @Override
+    public Node visitConstant(Constant constant) {
+        return constant;
+    }
+
+    @Override
+    public Node visitLoad(Load load) {
+        return load;
+    }
+
+    @Override
+    public Node visitConvert(Convert convert) {
+        Expression value = rewrite(convert.getValue());
+        return value == convert.getValue() ? convert : new Convert(value, convert.getType());
+    }
+
+    @Override
+    public Node visitUnary(Unary unary) {
+        Expression value = rewrite(unary.getValue());
+        return value == unary.getValue() ? unary : new Unary(unary.getOperator(), value);
+    }
+
+    @Override
+    public Node visitBinary(Binary binary) {
+        Expression left = rewrite(binary.getLeft());
+        Expression right = rewrite(binary.getRight());
+
+        if (left == binary.getLeft() && right == binary.getRight()) {
+            return binary;
+        }
+        return new Binary(binary.getOperator(), left, right);
+    }
+
+    protected static Block emptyBlock() {
+        return new Block(new ArrayList<>(), new ArrayList<>());
+    }
+}
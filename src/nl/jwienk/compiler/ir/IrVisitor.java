@@ -0,0 +1,28 @@
+package nl.jwienk.compiler.ir;
+
+public interface IrVisitor<T> {
+
+    T visitProgram(Program program);
+
+    T visitBlock(Block block);
+
+    T visitAssign(Assign assign);
+
+    T visitPrint(Print print);
+
+    T visitIf(If ifStatement);
+
+    T visitWhile(While whileStatement);
+
+    T visitFor(For forStatement);
+
+    T visitConstant(Constant constant);
+
+    T visitLoad(Load load);
+
+    T visitConvert(Convert convert);
+
+    T visitUnary(Unary unary);
+
+    T visitBinary(Binary binary);
+}
@@ -0,0 +1,26 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Symbol;
+
+/**
+ * A reference to a variable
+ * e.g a
+ */
+public class Load extends Expression {
+
+    private final Symbol symbol;
+
+    public Load(Symbol symbol) {
+        super(symbol.getType());
+        this.symbol = symbol;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitLoad(this);
+    }
+}
@@ -0,0 +1,10 @@
+package nl.jwienk.compiler.ir;
+
+/**
+ * A node of the intermediate representation
+ * The tree is built by the LoweringVisitor after all types are known
+ */
+public abstract class Node {
+
+    public abstract <T> T accept(IrVisitor<T> visitor);
+}
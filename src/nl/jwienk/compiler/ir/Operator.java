@@ -0,0 +1,71 @@
+package nl.jwienk.compiler.ir;
+
+public enum Operator {
+    ADD("+"), SUB("-"), MUL("*"), DIV("/"),
+    // only created by the optimizer, the language has no shifts
+    SHL("<<"), SHR(">>"), USHR(">>>"),
+    LT("<"), LE("<="), GT(">"), GE(">="), EQ("=="), NE("!="),
+    AND("&&"), OR("||"),
+    NEG("-"), NOT("!");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public boolean isArithmetic() {
+        return this.ordinal() <= USHR.ordinal() || this == NEG;
+    }
+
+    public boolean isShift() {
+        return this == SHL || this == SHR || this == USHR;
+    }
+
+    public boolean isComparison() {
+        return this.ordinal() >= LT.ordinal() && this.ordinal() <= NE.ordinal();
+    }
+
+    public boolean isLogical() {
+        return this == AND || this == OR;
+    }
+
+    /**
+     * @return the comparison that is true exactly when this one is false e.g. >= for <
+     */
+    public Operator negate() {
+        switch (this) {
+            case LT:
+                return GE;
+            case LE:
+                return GT;
+            case GT:
+                return LE;
+            case GE:
+                return LT;
+            case EQ:
+                return NE;
+            case NE:
+                return EQ;
+            default:
+                throw new IllegalStateException(this + " is not a comparison");
+        }
+    }
+
+    /**
+     * @param symbol the text of a binary operator in the source e.g. +
+     * @return operator
+     */
+    public static Operator fromBinarySymbol(String symbol) {
+        for (Operator operator : values()) {
+            if (operator != NEG && operator != NOT && !operator.isShift() && operator.symbol.equals(symbol)) {
+                return operator;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operator " + symbol);
+    }
+}
@@ -0,0 +1,22 @@
+package nl.jwienk.compiler.ir;
+
+/**
+ * e.g print(2 + 2);
+ */
+public class Print extends Node {
+
+    private final Expression value;
+
+    public Print(Expression value) {
+        this.value = value;
+    }
+
+    public Expression getValue() {
+        return value;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitPrint(this);
+    }
+}
@@ -0,0 +1,20 @@
+package nl.jwienk.compiler.ir;
+
+import nl.jwienk.compiler.Symbol;
+
+import java.util.List;
+
+/**
+ * The root of the tree, the statements of the main method
+ */
+public class Program extends Block {
+
+    public Program(List<Node> statements, List<Symbol> symbols) {
+        super(statements, symbols);
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitProgram(this);
+    }
+}
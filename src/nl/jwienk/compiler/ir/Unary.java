@@ -0,0 +1,29 @@
+package nl.jwienk.compiler.ir;
+
+/**
+ * e.g. -1 or !true
+ */
+public class Unary extends Expression {
+
+    private final Operator operator;
+    private final Expression value;
+
+    public Unary(Operator operator, Expression value) {
+        super(value.getType());
+        this.operator = operator;
+        this.value = value;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public Expression getValue() {
+        return value;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitUnary(this);
+    }
+}
@@ -0,0 +1,28 @@
+package nl.jwienk.compiler.ir;
+
+/**
+ * e.g while (a < 1) { someCode }
+ */
+public class While extends Node {
+
+    private final Expression condition;
+    private final Node body;
+
+    public While(Expression condition, Node body) {
+        this.condition = condition;
+        this.body = body;
+    }
+
+    public Expression getCondition() {
+        return condition;
+    }
+
+    public Node getBody() {
+        return body;
+    }
+
+    @Override
+    public <T> T accept(IrVisitor<T> visitor) {
+        return visitor.visitWhile(this);
+    }
+}
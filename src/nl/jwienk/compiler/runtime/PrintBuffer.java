@@ -0,0 +1,104 @@
+package nl.jwienk.compiler.runtime;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The print statement of generated programs
+ * Values are formatted straight into a byte buffer that is written to System.out
+ * when it is full and when the program ends, instead of one synchronized write per value.
+ * The output is the same as that of System.out.println.
+ * Generated programs have a single thread, so printing takes no lock. Only flush does,
+ * because the shutdown hook calls it from another thread.
+ */
+public final class PrintBuffer {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_INT = Integer.toString(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] buffer = new byte[BUFFER_SIZE];
+    private static int position = 0;
+
+    // reused for doubles, appending a double to it does not create a String
+    private static final StringBuilder digits = new StringBuilder(32);
+
+    static {
+        // a program that dies because of an exception still prints what it has printed so far
+        Runtime.getRuntime().addShutdownHook(new Thread(PrintBuffer::flush));
+    }
+
+    private PrintBuffer() {
+    }
+
+    public static void println(int value) {
+        if (value == Integer.MIN_VALUE) {
+            put(MIN_INT);
+        } else {
+            reserve(11);
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            // write the digits backwards after counting them
+            int end = position + digitCount(value);
+            for (int i = end - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position = end;
+        }
+        put(LINE_SEPARATOR);
+    }
+
+    public static void println(boolean value) {
+        put(value ? TRUE : FALSE);
+        put(LINE_SEPARATOR);
+    }
+
+    public static void println(double value) {
+        digits.setLength(0);
+        digits.append(value);
+        reserve(digits.length());
+        for (int i = 0; i < digits.length(); i++) {
+            buffer[position++] = (byte) digits.charAt(i);
+        }
+        put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Write everything that is buffered to System.out
+     */
+    public static synchronized void flush() {
+        if (position > 0) {
+            // emptied first, a write that throws does not leave the output for the next program
+            int length = position;
+            position = 0;
+            System.out.write(buffer, 0, length);
+        }
+        System.out.flush();
+    }
+
+    private static void put(byte[] bytes) {
+        reserve(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private static void reserve(int length) {
+        if (position + length > buffer.length) {
+            flush();
+        }
+    }
+
+    private static int digitCount(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+}